@@ -8,6 +8,7 @@ import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.WritableMap;
 import com.google.android.gms.common.GoogleApiAvailability;
@@ -185,6 +186,16 @@ public class ExposureNotificationModule extends ReactContextBaseJavaModule {
         Tracing.getLogData(promise);
     }
 
+    @ReactMethod
+    public void getApiStats(Promise promise) {
+        Tracing.getApiStats(promise);
+    }
+
+    @ReactMethod
+    public void replayExposureWindows(ReadableArray configs, Promise promise) {
+        Tracing.replayExposureWindows(configs, promise);
+    }
+
     @ReactMethod
     public void getConfigData(Promise promise) {
         Tracing.getConfigData(promise);
@@ -22,15 +22,23 @@ import com.google.android.gms.common.api.ApiException
 import com.google.android.gms.nearby.exposurenotification.ExposureNotificationStatusCodes
 import com.google.android.gms.nearby.exposurenotification.TemporaryExposureKey
 import com.google.common.io.BaseEncoding
+import com.google.gson.Gson
+import ie.gov.tracing.common.ApiCallStats
+import ie.gov.tracing.common.AppExecutors
 import ie.gov.tracing.common.Config
 import ie.gov.tracing.common.Events
+import ie.gov.tracing.common.ExposureConfig
+import ie.gov.tracing.common.ExposureConfigCache
+import ie.gov.tracing.nearby.DiagnosisKeysQuota
 import ie.gov.tracing.nearby.ExposureNotificationRepeater
 import ie.gov.tracing.nearby.ExposureNotificationClientWrapper
 import ie.gov.tracing.nearby.ExposureNotificationHelper
 import ie.gov.tracing.nearby.ProvideDiagnosisKeysWorker
 import ie.gov.tracing.nearby.StateUpdatedWorker
+import ie.gov.tracing.nearby.riskcalculation.WindowReplay
 import ie.gov.tracing.nearby.ExposureNotificationHelper.Callback
 import ie.gov.tracing.nearby.RequestCodes
+import ie.gov.tracing.network.RequestCompression
 import ie.gov.tracing.storage.ExposureNotificationDatabase
 import ie.gov.tracing.storage.ExposureNotificationRepository
 import ie.gov.tracing.storage.SharedPrefs
@@ -663,9 +671,12 @@ object Tracing {
             launch {
                 try {
                     SharedPrefs.clear(context)
+                    ExposureConfigCache.clear()
                     // just in case nuke fails
                     ExposureNotificationRepository(context).deleteAllExposureEntitiesAsync().await()
                     ExposureNotificationRepository(context).deleteAllTokensAsync().await()
+                    ExposureNotificationRepository(context).deleteAllWindowDigestsAsync().await()
+                    ExposureNotificationRepository(context).deleteAllOutboxEntitiesAsync().await()
                     // drop db
                     ExposureNotificationDatabase.nukeDatabase(context)
                     // cleanup any pending notification
@@ -683,6 +694,11 @@ object Tracing {
             launch {
                 try {
                     ExposureNotificationRepository(context).deleteAllExposureEntitiesAsync().await()
+                    ExposureNotificationRepository(context).deleteAllWindowDigestsAsync().await()
+                    // queued callbacks and contact metrics carry the window data being deleted
+                    ExposureNotificationRepository(context).deleteAllOutboxEntitiesAsync().await()
+                    // the next broadcast has to notify again even if its windows are unchanged
+                    SharedPrefs.remove(StateUpdatedWorker.LAST_RESULT_KEY, context)
                     promise.resolve(true)
                 } catch (ex: Exception) {
                     Events.raiseError("deleteExposureData", ex)
@@ -835,10 +851,41 @@ object Tracing {
             map.putString("lastRun", SharedPrefs.getString("lastRun", context))
             map.putString("lastError", SharedPrefs.getString("lastError", context))
             map.putString("lastApiError", SharedPrefs.getString("lastApiError", context))
+            map.putString("requestCompression", RequestCompression.summary())
+            map.putString("lastExportStats", SharedPrefs.getString("lastExportStats", context))
+            map.putString("apiCalls", ApiCallStats.summary())
+            map.putString("provideKeysQuota", DiagnosisKeysQuota.summary(context))
 
             promise.resolve(map)
         }
 
+        @JvmStatic
+        fun getApiStats(promise: Promise) {
+            val map = Arguments.createMap()
+
+            map.putInt("installedPlayServicesVersion", base.playServicesVersion)
+            map.putMap("methods", ApiCallStats.toMap())
+
+            promise.resolve(map)
+        }
+
+        // candidate configs are the same JSON the server returns for the exposure config
+        @JvmStatic
+        fun replayExposureWindows(configs: ReadableArray, promise: Promise) = runBlocking<Unit> {
+            launch {
+                try {
+                    val gson = Gson()
+                    val candidates = (0 until configs.size()).map { gson.fromJson(configs.getString(it), ExposureConfig::class.java) }
+                    val digests = ExposureNotificationRepository(context).allWindowDigestsAsync.await()
+                    val summaries = WindowReplay.replay(digests, candidates, AppExecutors.getBackgroundExecutor()).await()
+                    promise.resolve(WindowReplay.toArray(summaries))
+                } catch (ex: Exception) {
+                    Events.raiseError("replayExposureWindows", ex)
+                    promise.resolve(null)
+                }
+            }
+        }
+
         @JvmStatic
         fun getConfigData(promise: Promise) {
             val map = Arguments.createMap()
@@ -0,0 +1,98 @@
+package ie.gov.tracing.common
+
+import com.facebook.react.bridge.Arguments
+import com.facebook.react.bridge.WritableMap
+import com.google.android.gms.common.api.ApiException
+import java.util.concurrent.CancellationException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeoutException
+
+// latency and failure counts per ENS method, kept in memory for the life of the process
+object ApiCallStats {
+    // upper bounds in ms, the last bucket catches everything slower
+    private val BUCKETS = longArrayOf(50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000)
+
+    private class MethodStats {
+        var calls = 0
+        var failures = 0
+        var timeouts = 0
+        var cancelled = 0
+        var totalMs = 0L
+        var maxMs = 0L
+        val histogram = IntArray(BUCKETS.size + 1)
+        val statusCodes = HashMap<Int, Int>()
+    }
+
+    private val stats = ConcurrentHashMap<String, MethodStats>()
+
+    @JvmStatic
+    fun record(method: String, elapsedMs: Long, error: Throwable?) {
+        val entry = stats.getOrPut(method) { MethodStats() }
+        synchronized(entry) {
+            entry.calls++
+            entry.totalMs += elapsedMs
+            entry.maxMs = maxOf(entry.maxMs, elapsedMs)
+            entry.histogram[bucketFor(elapsedMs)]++
+            when (error) {
+                null -> {}
+                is TimeoutException -> entry.timeouts++
+                // cut short by a combined deadline or a stopped worker
+                is CancellationException -> entry.cancelled++
+                is ApiException -> {
+                    entry.failures++
+                    entry.statusCodes[error.statusCode] = (entry.statusCodes[error.statusCode] ?: 0) + 1
+                }
+                else -> entry.failures++
+            }
+        }
+    }
+
+    @JvmStatic
+    fun toMap(): WritableMap {
+        val map = Arguments.createMap()
+        stats.toSortedMap().forEach { (method, entry) ->
+            val item = Arguments.createMap()
+            synchronized(entry) {
+                item.putInt("calls", entry.calls)
+                item.putInt("failures", entry.failures)
+                item.putInt("timeouts", entry.timeouts)
+                item.putInt("cancelled", entry.cancelled)
+                item.putDouble("averageMs", if (entry.calls > 0) entry.totalMs.toDouble() / entry.calls else 0.0)
+                item.putDouble("maxMs", entry.maxMs.toDouble())
+
+                val histogram = Arguments.createMap()
+                entry.histogram.forEachIndexed { index, count ->
+                    if (count > 0) histogram.putInt(bucketLabel(index), count)
+                }
+                item.putMap("latency", histogram)
+
+                val codes = Arguments.createMap()
+                entry.statusCodes.forEach { (code, count) -> codes.putInt(code.toString(), count) }
+                item.putMap("statusCodes", codes)
+            }
+            map.putMap(method, item)
+        }
+        return map
+    }
+
+    // one line per method for getLogData
+    @JvmStatic
+    fun summary(): String {
+        return stats.toSortedMap().map { (method, entry) ->
+            synchronized(entry) {
+                val average = if (entry.calls > 0) entry.totalMs / entry.calls else 0
+                "$method: calls ${entry.calls}, avg ${average}ms, max ${entry.maxMs}ms, " +
+                        "failures ${entry.failures}, timeouts ${entry.timeouts}, cancelled ${entry.cancelled}, codes ${entry.statusCodes}"
+            }
+        }.joinToString("; ")
+    }
+
+    private fun bucketFor(elapsedMs: Long): Int {
+        BUCKETS.forEachIndexed { index, bound -> if (elapsedMs < bound) return index }
+        return BUCKETS.size
+    }
+
+    private fun bucketLabel(index: Int): String {
+        return if (index < BUCKETS.size) "<${BUCKETS[index]}" else ">=${BUCKETS.last()}"
+    }
+}
@@ -1,6 +1,7 @@
 package ie.gov.tracing.common
 
 import androidx.annotation.Keep
+import ie.gov.tracing.network.TimeoutProfile
 
 @Keep
 data class ExposureConfig(
@@ -35,5 +36,10 @@ data class ExposureConfig(
         val v2Mode: Boolean = false,
         val chaffEnabled: Boolean = false,
         val chaffWindow: Int = 5,
-        val disableENSChecks: Boolean = false
+        val disableENSChecks: Boolean = false,
+        val networkTimeouts: Map<String, TimeoutProfile>? = null,
+        val coalesceExports: Boolean = false,
+        val riskEngine: String? = null,
+        val riskEngineVersion: Int = 0,
+        val shadowRiskEngine: String? = null
 )
\ No newline at end of file
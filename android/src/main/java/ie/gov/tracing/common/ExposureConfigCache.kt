@@ -0,0 +1,138 @@
+package ie.gov.tracing.common
+
+import android.content.Context
+import androidx.annotation.Keep
+import com.google.common.util.concurrent.Futures
+import com.google.common.util.concurrent.ListenableFuture
+import com.google.gson.Gson
+import ie.gov.tracing.Tracing
+import ie.gov.tracing.network.Fetcher
+import ie.gov.tracing.network.RequestClass
+import ie.gov.tracing.network.TimeoutProfiles
+import ie.gov.tracing.storage.SharedPrefs
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+@Keep
+data class ExposureSettings(val exposureConfig: String?)
+
+// parsed exposure config held in memory and on disk, runs use the cached copy straight away
+// and revalidate against /settings/exposures in the background (stale-while-revalidate)
+object ExposureConfigCache {
+    private const val CONFIG_KEY = "exposureConfig"
+    private const val ETAG_KEY = "exposureConfigETag"
+    private const val VERSION_KEY = "exposureConfigVersion"
+    private const val FETCHED_KEY = "exposureConfigFetched"
+    private val MAX_STALE_MS = TimeUnit.HOURS.toMillis(24)
+
+    private val gson = Gson()
+    private val revalidating = AtomicBoolean(false)
+
+    @Volatile
+    private var cached: ExposureConfig? = null
+    @Volatile
+    private var version: Long = 0
+
+    @JvmStatic
+    fun get(context: Context): ExposureConfig? {
+        cached?.let { return it }
+        synchronized(this) {
+            if (cached == null) {
+                try {
+                    val data = SharedPrefs.getString(CONFIG_KEY, context)
+                    if (data.isNotEmpty()) {
+                        cached = gson.fromJson(data, ExposureConfig::class.java)
+                        version = SharedPrefs.getLong(VERSION_KEY, context)
+                    }
+                } catch (ex: Exception) {
+                    Events.raiseError("ExposureConfigCache - unable to read cached config", ex)
+                }
+            }
+            return cached
+        }
+    }
+
+    // changes whenever the server returns a different config, use to key anything derived from it
+    @JvmStatic
+    fun getVersion(context: Context): Long {
+        get(context)
+        return version
+    }
+
+    @JvmStatic
+    fun fetch(context: Context): ListenableFuture<ExposureConfig> {
+        val config = get(context)
+        val lastFetched = SharedPrefs.getLong(FETCHED_KEY, context)
+        if (config != null && System.currentTimeMillis() - lastFetched < MAX_STALE_MS) {
+            revalidateAsync(context)
+            return Futures.immediateFuture(config)
+        }
+
+        // nothing cached or too old to trust, wait for the server but fall back to what we have
+        val refreshed = refresh(context) ?: config
+                ?: return Futures.immediateFailedFuture(Exception("No exposure config available"))
+        return Futures.immediateFuture(refreshed)
+    }
+
+    @JvmStatic
+    fun clear() {
+        synchronized(this) {
+            cached = null
+            version = 0
+        }
+    }
+
+    private fun revalidateAsync(context: Context) {
+        if (!revalidating.compareAndSet(false, true)) return
+
+        AppExecutors.getBackgroundExecutor().execute {
+            try {
+                refresh(context)
+            } finally {
+                revalidating.set(false)
+            }
+        }
+    }
+
+    private fun refresh(context: Context): ExposureConfig? {
+        try {
+            val appVersion = Tracing.version(context).getString("display")
+            val etag = if (get(context) != null) SharedPrefs.getString(ETAG_KEY, context) else null
+            val response = Fetcher.fetchConditional("/settings/exposures?os=android&version=$appVersion", etag, context, RequestClass.SETTINGS)
+                    ?: return null
+
+            if (response.notModified) {
+                SharedPrefs.setLong(FETCHED_KEY, System.currentTimeMillis(), context)
+                return get(context)
+            }
+
+            val settings = gson.fromJson(response.body, ExposureSettings::class.java)
+            val data = settings?.exposureConfig ?: return null
+            // an unchanged config keeps the cached instance, objects derived from it are reused by identity
+            val config = synchronized(this) {
+                val current = cached
+                if (current != null && data == SharedPrefs.getString(CONFIG_KEY, context)) {
+                    current
+                } else {
+                    val parsed = gson.fromJson(data, ExposureConfig::class.java)
+                    if (data != SharedPrefs.getString(CONFIG_KEY, context)) {
+                        version = SharedPrefs.getLong(VERSION_KEY, context) + 1
+                        SharedPrefs.setString(CONFIG_KEY, data, context)
+                        SharedPrefs.setLong(VERSION_KEY, version, context)
+                        Events.raiseEvent(Events.INFO, "ExposureConfigCache - config updated to version $version")
+                    }
+                    cached = parsed
+                    parsed
+                }
+            }
+            SharedPrefs.setString(ETAG_KEY, response.etag ?: "", context)
+            SharedPrefs.setLong(FETCHED_KEY, System.currentTimeMillis(), context)
+            TimeoutProfiles.configure(config.networkTimeouts, context)
+
+            return config
+        } catch (ex: Exception) {
+            Events.raiseError("ExposureConfigCache - refresh", ex)
+        }
+        return null
+    }
+}
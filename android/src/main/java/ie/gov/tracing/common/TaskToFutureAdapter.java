@@ -1,37 +1,112 @@
 package ie.gov.tracing.common;
 
+import android.os.SystemClock;
+
 import androidx.concurrent.futures.CallbackToFutureAdapter;
 
 import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.common.util.concurrent.FluentFuture;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class TaskToFutureAdapter {
   public static <T> ListenableFuture<T> getFutureWithTimeout(
           Task<T> task, long timeout, TimeUnit timeUnit, ScheduledExecutorService executor) {
-    return FluentFuture.<T>from(
-        CallbackToFutureAdapter.getFuture(
-            completer -> {
-              task.addOnCompleteListener(
-                  executor,
-                  completed -> {
-                    try {
-                      if (completed.isCanceled()) {
-                        completer.setCancelled();
-                      } else if (completed.getException() != null) {
-                        completer.setException(completed.getException());
-                      } else {
-                        completer.set(completed.getResult());
-                      }
-                    } catch (Exception ex) {
-                      completer.setException(ex);
-                    }
-                  });
-              return "GmsCoreTask";
-            }))
+    return FluentFuture.from(getFuture(task, executor))
         .withTimeout(timeout, timeUnit, executor);
   }
+
+  // no deadline of its own, for calls joined with others under one combined timeout
+  public static <T> ListenableFuture<T> getFuture(Task<T> task, Executor executor) {
+    return CallbackToFutureAdapter.getFuture(
+        completer -> {
+          // GMS tasks can't be cancelled or have listeners removed, so once the future is
+          // cancelled (timeout or a stopped worker) drop our side of the listener instead
+          AtomicReference<CallbackToFutureAdapter.Completer<T>> pending = new AtomicReference<>(completer);
+          completer.addCancellationListener(() -> pending.set(null), MoreExecutors.directExecutor());
+
+          task.addOnCompleteListener(
+              runnable -> {
+                if (pending.get() != null) executor.execute(runnable);
+              },
+              completed -> {
+                CallbackToFutureAdapter.Completer<T> target = pending.getAndSet(null);
+                if (target == null) return;
+                try {
+                  if (completed.isCanceled()) {
+                    target.setCancelled();
+                  } else if (completed.getException() != null) {
+                    target.setException(completed.getException());
+                  } else {
+                    target.set(completed.getResult());
+                  }
+                } catch (Exception ex) {
+                  target.setException(ex);
+                }
+              });
+          return "GmsCoreTask";
+        });
+  }
+
+  // same as above, recording latency and failures against the ENS method name
+  public static <T> ListenableFuture<T> getFutureWithTimeout(
+          String method, Task<T> task, long timeout, TimeUnit timeUnit, ScheduledExecutorService executor) {
+    return recordStats(method, getFutureWithTimeout(task, timeout, timeUnit, executor));
+  }
+
+  public static <T> ListenableFuture<T> getFuture(String method, Task<T> task, Executor executor) {
+    return recordStats(method, getFuture(task, executor));
+  }
+
+  // for tasks consumed through their own listeners, recorded once the task completes
+  public static <T> Task<T> withStats(String method, Task<T> task) {
+    long started = SystemClock.elapsedRealtime();
+    task.addOnCompleteListener(MoreExecutors.directExecutor(), completed ->
+        ApiCallStats.record(method, SystemClock.elapsedRealtime() - started,
+            completed.isCanceled() ? new CancellationException() : completed.getException()));
+    return task;
+  }
+
+  // blocking wait for callers already off the main thread, a timeout is recorded as one
+  public static <T> T await(String method, Task<T> task, long timeout, TimeUnit timeUnit)
+      throws ExecutionException, InterruptedException, TimeoutException {
+    long started = SystemClock.elapsedRealtime();
+    try {
+      T result = Tasks.await(task, timeout, timeUnit);
+      ApiCallStats.record(method, SystemClock.elapsedRealtime() - started, null);
+      return result;
+    } catch (ExecutionException | InterruptedException | TimeoutException ex) {
+      // ApiCallStats reads the status code from the ApiException the task failed with
+      Throwable error = ex instanceof ExecutionException && ex.getCause() != null ? ex.getCause() : ex;
+      ApiCallStats.record(method, SystemClock.elapsedRealtime() - started, error);
+      throw ex;
+    }
+  }
+
+  private static <T> ListenableFuture<T> recordStats(String method, ListenableFuture<T> future) {
+    long started = SystemClock.elapsedRealtime();
+    Futures.addCallback(future, new FutureCallback<T>() {
+      @Override
+      public void onSuccess(T result) {
+        ApiCallStats.record(method, SystemClock.elapsedRealtime() - started, null);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        ApiCallStats.record(method, SystemClock.elapsedRealtime() - started, t);
+      }
+    }, MoreExecutors.directExecutor());
+    return future;
+  }
 }
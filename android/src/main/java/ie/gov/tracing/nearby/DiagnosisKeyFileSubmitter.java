@@ -2,6 +2,9 @@ package ie.gov.tracing.nearby;
 
 import android.content.Context;
 
+import com.google.android.gms.common.api.ApiException;
+import com.google.android.gms.common.api.CommonStatusCodes;
+import com.google.android.gms.nearby.exposurenotification.ExposureNotificationStatusCodes;
 import com.google.common.util.concurrent.FluentFuture;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -9,6 +12,8 @@ import com.google.common.util.concurrent.ListenableFuture;
 import org.threeten.bp.Duration;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import ie.gov.tracing.Tracing;
@@ -16,18 +21,29 @@ import ie.gov.tracing.common.AppExecutors;
 import ie.gov.tracing.common.Events;
 import ie.gov.tracing.common.ExposureConfig;
 import ie.gov.tracing.common.TaskToFutureAdapter;
+import ie.gov.tracing.network.ExportCoalescer;
+import ie.gov.tracing.network.ExportFile;
 import ie.gov.tracing.storage.SharedPrefs;
 
 class DiagnosisKeyFileSubmitter {
   private static final Duration API_TIMEOUT = Duration.ofSeconds(10);
+  private static final Duration TIMEOUT_PER_MB = Duration.ofSeconds(5);
+  private static final Duration MAX_TIMEOUT = Duration.ofSeconds(120);
+  private static final long CHUNK_BYTES = 4 * 1024 * 1024;
+  private static final long CHUNK_KEYS = 100_000;
+  // every chunk is a separate provideDiagnosisKeys call, which counts against the ENS quota
+  // tracked by DiagnosisKeysQuota
+  private static final int MAX_CHUNKS = 3;
 
   private final ExposureNotificationClientWrapper client;
+  private final Context context;
 
   DiagnosisKeyFileSubmitter(Context context) {
     client = ExposureNotificationClientWrapper.get(context);
+    this.context = context;
   }
 
-  ListenableFuture<?> parseFiles(List<File> files, String token, ExposureConfig config) {
+  ListenableFuture<?> parseFiles(List<ExportFile> files, String token, ExposureConfig config) {
     if (files == null || files.size() == 0) {
       SharedPrefs.setString("lastError", "No files available to process", Tracing.currentContext);
       Events.raiseEvent(Events.INFO, "parseFiles - No export files to process.");
@@ -36,19 +52,169 @@ class DiagnosisKeyFileSubmitter {
 
     Events.raiseEvent(Events.INFO, "Processing " + files.size() + " export files...");
 
+    List<List<ExportFile>> groups = config.getCoalesceExports() ? ExportCoalescer.group(files) : singletons(files);
+
     if (config.getV2Mode()) {
       client.setDiagnosisKeysDataMapping(config);
-      return TaskToFutureAdapter.getFutureWithTimeout(
-                  client.provideDiagnosisKeys(files),
-                  API_TIMEOUT.toMillis(),
-                  TimeUnit.MILLISECONDS,
-                  AppExecutors.getScheduledExecutor());
+
+      // don't plan more calls than ENS will accept today
+      int maxChunks = Math.max(1, Math.min(MAX_CHUNKS, DiagnosisKeysQuota.available(context)));
+      List<List<ExportFile>> chunks = buildChunks(groups, maxChunks);
+      FluentFuture<Void> submitted = FluentFuture.from(Futures.immediateFuture(null));
+      for (int i = 0; i < chunks.size(); i++) {
+        final List<ExportFile> chunk = chunks.get(i);
+        final int chunkNumber = i + 1;
+        final int chunkCount = chunks.size();
+        // chunks run in order and stop at the first failure, so "since" never skips a chunk
+        submitted = submitted.transformAsync(done -> submitChunk(chunk, chunkNumber, chunkCount),
+                AppExecutors.getBackgroundExecutor());
+      }
+      return submitted;
     } else {
-      return TaskToFutureAdapter.getFutureWithTimeout(
-              client.provideDiagnosisKeys(files, token, config),
-              API_TIMEOUT.toMillis(),
-              TimeUnit.MILLISECONDS,
-              AppExecutors.getScheduledExecutor());
+      // v1 results are tied to the token, keep to a single call
+      List<ExportFile> all = flatten(groups);
+      return FluentFuture.from(TaskToFutureAdapter.getFutureWithTimeout(
+                  "provideDiagnosisKeys",
+                  client.provideDiagnosisKeys(toFiles(all), token, config),
+                  timeoutFor(all),
+                  TimeUnit.MILLISECONDS,
+                  AppExecutors.getScheduledExecutor()))
+              .transform(done -> {
+                  DiagnosisKeysQuota.recordSuccess(context);
+                  return done;
+              }, AppExecutors.getBackgroundExecutor())
+              .catchingAsync(ApiException.class, ex -> {
+                  recordRateLimit(ex);
+                  return Futures.immediateFailedFuture(ex);
+              }, AppExecutors.getBackgroundExecutor());
+    }
+  }
+
+  private ListenableFuture<Void> submitChunk(List<ExportFile> chunk, int chunkNumber, int chunkCount) {
+    Events.raiseEvent(Events.INFO, "parseFiles - submitting chunk " + chunkNumber + "/" + chunkCount + " with " + chunk.size() + " files");
+
+    return FluentFuture.from(TaskToFutureAdapter.getFutureWithTimeout(
+                "provideDiagnosisKeys",
+                client.provideDiagnosisKeys(toFiles(chunk)),
+                timeoutFor(chunk),
+                TimeUnit.MILLISECONDS,
+                AppExecutors.getScheduledExecutor()))
+            .transform(done -> {
+                DiagnosisKeysQuota.recordSuccess(context);
+                recordProgress(chunk);
+                return done;
+            }, AppExecutors.getBackgroundExecutor())
+            .catchingAsync(ApiException.class, ex -> {
+                if (!recordRateLimit(ex) && ex.getStatusCode() == CommonStatusCodes.DEVELOPER_ERROR) {
+                    // ENS reports a missing or invalid data mapping as a developer error, the stored
+                    // fingerprint may no longer match what ENS holds
+                    client.invalidateDiagnosisKeysDataMapping();
+                }
+                return Futures.immediateFailedFuture(ex);
+            }, AppExecutors.getBackgroundExecutor());
+  }
+
+  private boolean recordRateLimit(ApiException ex) {
+    if (ex.getStatusCode() != ExposureNotificationStatusCodes.FAILED_RATE_LIMITED) {
+      return false;
+    }
+    DiagnosisKeysQuota.recordRateLimited(context);
+    return true;
+  }
+
+  // persist the index of the last submitted export so a failed later chunk doesn't cause
+  // this one to be downloaded and submitted again on the next run
+  private void recordProgress(List<ExportFile> chunk) {
+    long since = SharedPrefs.getLong("since", context);
+    for (ExportFile file : chunk) {
+      since = Math.max(since, file.getId());
+      if (!file.getFile().delete()) {
+        Events.raiseEvent(Events.INFO, "parseFiles - file not deleted:" + file.getFile().getName());
+      }
+    }
+    SharedPrefs.setLong("since", since, context);
+    Events.raiseEvent(Events.INFO, "parseFiles - chunk submitted, since index now: " + since);
+  }
+
+  // groups arrive in server index order and are never split across chunks
+  private static List<List<ExportFile>> buildChunks(List<List<ExportFile>> groups, int maxChunks) {
+    // matching cost follows the number of keys, fall back to bytes if any export couldn't be read
+    boolean useKeys = true;
+    for (ExportFile file : flatten(groups)) {
+      if (file.getKeyCount() < 0) useKeys = false;
+    }
+    long total = 0;
+    for (List<ExportFile> group : groups) {
+      total += weight(group, useKeys);
+    }
+    long perChunk = useKeys ? CHUNK_KEYS : CHUNK_BYTES;
+    int chunkCount = (int) Math.min(maxChunks, Math.max(1, (total + perChunk - 1) / perChunk));
+    chunkCount = Math.min(chunkCount, groups.size());
+
+    // split on weight rather than file count so one large export doesn't swamp a chunk
+    List<List<ExportFile>> chunks = new ArrayList<>();
+    long weightPerChunk = (total + chunkCount - 1) / chunkCount;
+    List<ExportFile> current = new ArrayList<>();
+    long currentWeight = 0;
+    for (List<ExportFile> group : groups) {
+      long weight = weight(group, useKeys);
+      if (!current.isEmpty() && currentWeight + weight > weightPerChunk && chunks.size() < chunkCount - 1) {
+        chunks.add(current);
+        current = new ArrayList<>();
+        currentWeight = 0;
+      }
+      current.addAll(group);
+      currentWeight += weight;
+    }
+    chunks.add(current);
+    return chunks;
+  }
+
+  private static long weight(List<ExportFile> group, boolean useKeys) {
+    long weight = 0;
+    for (ExportFile file : group) {
+      weight += useKeys ? file.getKeyCount() : file.getFile().length();
+    }
+    return weight;
+  }
+
+  private static List<List<ExportFile>> singletons(List<ExportFile> files) {
+    List<ExportFile> sorted = new ArrayList<>(files);
+    Collections.sort(sorted, (a, b) -> Long.compare(a.getId(), b.getId()));
+    List<List<ExportFile>> groups = new ArrayList<>(sorted.size());
+    for (ExportFile file : sorted) {
+      groups.add(Collections.singletonList(file));
+    }
+    return groups;
+  }
+
+  private static List<ExportFile> flatten(List<List<ExportFile>> groups) {
+    List<ExportFile> files = new ArrayList<>();
+    for (List<ExportFile> group : groups) {
+      files.addAll(group);
+    }
+    return files;
+  }
+
+  private static long timeoutFor(List<ExportFile> files) {
+    long megabytes = (totalBytes(files) + 1024 * 1024 - 1) / (1024 * 1024);
+    long timeout = API_TIMEOUT.toMillis() + megabytes * TIMEOUT_PER_MB.toMillis();
+    return Math.min(timeout, MAX_TIMEOUT.toMillis());
+  }
+
+  private static long totalBytes(List<ExportFile> files) {
+    long total = 0;
+    for (ExportFile file : files) {
+      total += file.getFile().length();
+    }
+    return total;
+  }
+
+  private static List<File> toFiles(List<ExportFile> files) {
+    List<File> result = new ArrayList<>(files.size());
+    for (ExportFile file : files) {
+      result.add(file.getFile());
     }
+    return result;
   }
 }
@@ -0,0 +1,75 @@
+package ie.gov.tracing.nearby
+
+import android.content.Context
+import ie.gov.tracing.common.Events
+import ie.gov.tracing.storage.SharedPrefs
+import java.util.concurrent.TimeUnit
+
+// local ledger of provideDiagnosisKeys calls so we know when ENS will reject the next one
+// before downloading anything, ENS allows a fixed number of calls per rolling 24 hours
+object DiagnosisKeysQuota {
+    private const val LEDGER_KEY = "provideKeysLedger"
+    private const val BLOCKED_UNTIL_KEY = "provideKeysBlockedUntil"
+    private const val DAILY_LIMIT = 6
+    private val WINDOW_MS = TimeUnit.HOURS.toMillis(24)
+
+    @JvmStatic
+    @Synchronized
+    fun recordSuccess(context: Context) {
+        val now = System.currentTimeMillis()
+        val calls = load(context, now)
+        calls.add(now)
+        save(context, calls)
+    }
+
+    @JvmStatic
+    @Synchronized
+    fun recordRateLimited(context: Context) {
+        val now = System.currentTimeMillis()
+        val calls = load(context, now)
+        // our ledger missed some calls (reinstall, cleared data), assume the oldest we know of
+        // frees up first and otherwise wait a full window
+        val blockedUntil = (calls.firstOrNull() ?: now) + WINDOW_MS
+        SharedPrefs.setLong(BLOCKED_UNTIL_KEY, blockedUntil, context)
+        Events.raiseEvent(Events.INFO, "provideDiagnosisKeys rate limited until: $blockedUntil")
+    }
+
+    @JvmStatic
+    @Synchronized
+    fun available(context: Context): Int {
+        val now = System.currentTimeMillis()
+        if (now < SharedPrefs.getLong(BLOCKED_UNTIL_KEY, context)) return 0
+        return (DAILY_LIMIT - load(context, now).size).coerceAtLeast(0)
+    }
+
+    // 0 when a call can be made now
+    @JvmStatic
+    @Synchronized
+    fun nextAvailableAt(context: Context): Long {
+        val now = System.currentTimeMillis()
+        val blockedUntil = SharedPrefs.getLong(BLOCKED_UNTIL_KEY, context)
+        if (now < blockedUntil) return blockedUntil
+        val calls = load(context, now)
+        if (calls.size < DAILY_LIMIT) return 0
+        return calls[calls.size - DAILY_LIMIT] + WINDOW_MS
+    }
+
+    @JvmStatic
+    fun summary(context: Context): String {
+        return "available: ${available(context)}, next: ${nextAvailableAt(context)}"
+    }
+
+    private fun load(context: Context, now: Long): MutableList<Long> {
+        val data = SharedPrefs.getString(LEDGER_KEY, context)
+        if (data.isEmpty()) return mutableListOf()
+        return data.split(",")
+                .mapNotNull { it.trim().toLongOrNull() }
+                .filter { now - it < WINDOW_MS }
+                .sorted()
+                .toMutableList()
+    }
+
+    private fun save(context: Context, calls: List<Long>) {
+        SharedPrefs.setString(LEDGER_KEY, calls.takeLast(DAILY_LIMIT * 2).joinToString(","), context)
+    }
+}
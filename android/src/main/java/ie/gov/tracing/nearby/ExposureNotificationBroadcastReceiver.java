@@ -34,6 +34,7 @@ public class ExposureNotificationBroadcastReceiver extends BroadcastReceiver {
                                 .build());
             } else if (action.equals(ExposureNotificationClient.ACTION_SERVICE_STATE_UPDATED)) {
                 Boolean serviceStatus = intent.getBooleanExtra(ExposureNotificationClient.EXTRA_SERVICE_STATE, false);
+                ExposureNotificationClientWrapper.get(context).invalidateCachedState();
                 Tracing.updateExposureServiceStatus(serviceStatus);
             }
         } catch(Exception e) {
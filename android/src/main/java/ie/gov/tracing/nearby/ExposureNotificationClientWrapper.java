@@ -16,9 +16,9 @@ import com.google.android.gms.nearby.exposurenotification.ReportType;
 import com.google.android.gms.nearby.exposurenotification.TemporaryExposureKey;
 import com.google.android.gms.tasks.Task;
 import com.google.android.gms.tasks.Tasks;
-import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
-import com.google.gson.Gson;
+
+import org.threeten.bp.Duration;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -26,20 +26,36 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
-import ie.gov.tracing.Tracing;
 import ie.gov.tracing.common.Events;
 import ie.gov.tracing.common.ExposureConfig;
-import ie.gov.tracing.network.Fetcher;
+import ie.gov.tracing.common.ExposureConfigCache;
+import ie.gov.tracing.common.TaskToFutureAdapter;
 import ie.gov.tracing.storage.SharedPrefs;
 
 public class ExposureNotificationClientWrapper {
 
+  private static final String DATA_MAPPING_FINGERPRINT = "diagnosisKeysDataMappingFingerprint";
+  private static final Duration DATA_MAPPING_TIMEOUT = Duration.ofSeconds(10);
+  // the JS side polls status often, these only change on user action or a Play Services update
+  private static final Duration ENABLED_TTL = Duration.ofSeconds(30);
+  private static final Duration VERSION_TTL = Duration.ofHours(1);
+
   private static ExposureNotificationClientWrapper INSTANCE;
 
   private final Context appContext;
   private final ExposureNotificationClient exposureNotificationClient;
 
+  private final CachedValue<Boolean> enabled = new CachedValue<>(ENABLED_TTL);
+  private final CachedValue<Long> version = new CachedValue<>(VERSION_TTL);
+  private final CachedValue<Boolean> locationlessScanning = new CachedValue<>(VERSION_TTL);
+
+  private ExposureConfig exposureConfigurationSource;
+  private ExposureConfiguration exposureConfiguration;
+  private ExposureConfig dailySummariesConfigSource;
+  private DailySummariesConfig dailySummariesConfig;
+
   public static ExposureNotificationClientWrapper get(Context context) {
     if (INSTANCE == null) {
       INSTANCE = new ExposureNotificationClientWrapper(context);
@@ -53,42 +69,33 @@ public class ExposureNotificationClientWrapper {
   }
 
   Task<Void> start() {
-    return exposureNotificationClient.start();
+    invalidateCachedState();
+    return exposureNotificationClient.start()
+            .addOnCompleteListener(task -> invalidateCachedState());
   }
 
   Task<Void> stop() {
-    return exposureNotificationClient.stop();
+    invalidateCachedState();
+    return exposureNotificationClient.stop()
+            .addOnCompleteListener(task -> invalidateCachedState());
   }
 
   public Task<Boolean> isEnabled() {
-    return exposureNotificationClient.isEnabled();
+    return cached(enabled, exposureNotificationClient::isEnabled);
+  }
+
+  // called when ENS reports a state change so the next status check goes back to the service
+  public void invalidateCachedState() {
+    enabled.invalidate();
   }
 
   public Task<List<TemporaryExposureKey>> getTemporaryExposureKeyHistory() {
     // will only return inactive keys i.e. not today's
-    return exposureNotificationClient.getTemporaryExposureKeyHistory();
+    return TaskToFutureAdapter.withStats("getTemporaryExposureKeyHistory", exposureNotificationClient.getTemporaryExposureKeyHistory());
   }
 
   Task<Void> provideDiagnosisKeys(List<File> files, String token, ExposureConfig config) {
-
-    Events.raiseEvent(Events.INFO, "mapping exposure configuration with " + config);
-    // error will be thrown here if config is not complete
-    ExposureConfiguration exposureConfiguration =
-            new ExposureConfiguration.ExposureConfigurationBuilder()
-                    .setAttenuationScores(config.getAttenuationLevelValues())
-                    .setDaysSinceLastExposureScores(config.getDaysSinceLastExposureLevelValues())
-                    .setTransmissionRiskScores(config.getTransmissionRiskLevelValues())
-                    .setDurationScores(config.getDurationLevelValues())
-                    .setMinimumRiskScore(config.getMinimumRiskScore())
-                    .setDurationWeight(config.getDurationWeight())
-                    .setAttenuationWeight(config.getAttenuationWeight())
-                    .setTransmissionRiskWeight(config.getTransmissionRiskWeight())
-                    .setDaysSinceLastExposureWeight(config.getDaysSinceLastExposureWeight())
-                    .setDurationAtAttenuationThresholds(config.getDurationAtAttenuationThresholds()).build();
-
-    // we use these when we receive match broadcasts from exposure API
-    SharedPrefs.setString("thresholdWeightings", Arrays.toString(config.getThresholdWeightings()), appContext);
-    SharedPrefs.setLong("timeThreshold", config.getTimeThreshold(), appContext);
+    ExposureConfiguration exposureConfiguration = getExposureConfiguration(config);
 
     Events.raiseEvent(Events.INFO, "processing diagnosis keys with: " + exposureConfiguration);
 
@@ -96,16 +103,30 @@ public class ExposureNotificationClientWrapper {
             .provideDiagnosisKeys(files, exposureConfiguration, token);
   }
 
-  public ListenableFuture<ExposureConfig> fetchExposureConfig(Context context) {
-    String version = Tracing.version(context).getString("display");
-    String settings = Fetcher.fetch("/settings/exposures?os=android&version=" + version, context);
-    Gson gson = new Gson();
-    Map map = gson.fromJson(settings, Map.class);
-    String exposureConfig = (String) map.get("exposureConfig");
-    ExposureConfig config = gson.fromJson(exposureConfig, ExposureConfig.class);
+  // ExposureConfigCache hands out one instance per config version, so rebuild only when it changes
+  private synchronized ExposureConfiguration getExposureConfiguration(ExposureConfig config) {
+    if (exposureConfigurationSource != config) {
+      Events.raiseEvent(Events.INFO, "mapping exposure configuration with " + config);
+      // error will be thrown here if config is not complete
+      exposureConfiguration =
+              new ExposureConfiguration.ExposureConfigurationBuilder()
+                      .setAttenuationScores(config.getAttenuationLevelValues())
+                      .setDaysSinceLastExposureScores(config.getDaysSinceLastExposureLevelValues())
+                      .setTransmissionRiskScores(config.getTransmissionRiskLevelValues())
+                      .setDurationScores(config.getDurationLevelValues())
+                      .setMinimumRiskScore(config.getMinimumRiskScore())
+                      .setDurationWeight(config.getDurationWeight())
+                      .setAttenuationWeight(config.getAttenuationWeight())
+                      .setTransmissionRiskWeight(config.getTransmissionRiskWeight())
+                      .setDaysSinceLastExposureWeight(config.getDaysSinceLastExposureWeight())
+                      .setDurationAtAttenuationThresholds(config.getDurationAtAttenuationThresholds()).build();
+      exposureConfigurationSource = config;
+    }
+    return exposureConfiguration;
+  }
 
-    SharedPrefs.setString("exposureConfig", exposureConfig, context);
-    return Futures.immediateFuture(config);
+  public ListenableFuture<ExposureConfig> fetchExposureConfig(Context context) {
+    return ExposureConfigCache.fetch(context);
   }
 
   Task<Void> provideDiagnosisKeys(List<File> files) {
@@ -132,10 +153,17 @@ public class ExposureNotificationClientWrapper {
   }
 
   public Task<List<DailySummary>> getDailySummaries(ExposureConfig config) {
+    return exposureNotificationClient.getDailySummaries(getDailySummariesConfig(config));
+  }
+
+  private synchronized DailySummariesConfig getDailySummariesConfig(ExposureConfig config) {
+    if (dailySummariesConfigSource == config) {
+      return dailySummariesConfig;
+    }
     DailySummariesConfig.DailySummariesConfigBuilder builder = new DailySummariesConfig.DailySummariesConfigBuilder();
     List<Double> attenuationWeightings = Arrays.asList(config.getImmediateDurationWeight() / 100.0, config.getNearDurationWeight() / 100.0, config.getMediumDurationWeight() / 100.0, config.getOtherDurationWeight() / 100.0);
     List<Integer> attenuations = convertArray(config.getAttenuationDurationThresholds());
-    DailySummariesConfig dailySummaryConfig = builder
+    dailySummariesConfig = builder
             // A map that stores a weight for each possible value of reportType.
             .setReportTypeWeight(ReportType.CONFIRMED_TEST, config.getReportTypeConfirmedTestWeight() / 100.0)
             .setReportTypeWeight(ReportType.CONFIRMED_CLINICAL_DIAGNOSIS, config.getReportTypeConfirmedClinicalDiagnosisWeight() / 100.0)
@@ -148,14 +176,25 @@ public class ExposureNotificationClientWrapper {
             .setInfectiousnessWeight(Infectiousness.HIGH, config.getInfectiousnessHighWeight() / 100.0)
             .setMinimumWindowScore(config.getMinimumRiskScoreFullRange())
             .build();
-    return exposureNotificationClient.getDailySummaries(dailySummaryConfig);
+    dailySummariesConfigSource = config;
+    return dailySummariesConfig;
   }
 
   public void setDiagnosisKeysDataMapping(ExposureConfig config) {
+    int[] onsetType = config.getInfectiousnessForDaysSinceOnsetOfSymptoms();
+    if (onsetType == null) {
+      onsetType = new int[0];
+    }
+
+    // the mapping only changes with the config, skip both IPCs when we've already applied it
+    String fingerprint = dataMappingFingerprint(onsetType);
+    if (fingerprint.equals(SharedPrefs.getString(DATA_MAPPING_FINGERPRINT, appContext))) {
+      return;
+    }
+
     DiagnosisKeysDataMapping.DiagnosisKeysDataMappingBuilder builder = new DiagnosisKeysDataMapping.DiagnosisKeysDataMappingBuilder();
     Map<Integer, Integer> infectedDays = new HashMap<Integer, Integer>();
     int counter = 0;
-    int[] onsetType = config.getInfectiousnessForDaysSinceOnsetOfSymptoms();
 
     for (Integer i = -14; i <= 14; i++) {
       if (counter < onsetType.length) {
@@ -165,34 +204,55 @@ public class ExposureNotificationClientWrapper {
       }
       counter += 1;
     }
-    Events.raiseEvent(Events.INFO, "Setting diagnosis key mapping");
     DiagnosisKeysDataMapping mappings = builder
             .setInfectiousnessWhenDaysSinceOnsetMissing(Infectiousness.STANDARD)
             .setReportTypeWhenMissing(ReportType.CONFIRMED_TEST)
             .setDaysSinceOnsetToInfectiousness(infectedDays)
             .build();
 
-    DiagnosisKeysDataMapping currentMap = null;
     try {
-      currentMap = Tasks.await(exposureNotificationClient.getDiagnosisKeysDataMapping());
+      // after a prefs clear or reinstall ENS may still hold this mapping, one read is cheaper than
+      // spending a rate limited set on it
+      DiagnosisKeysDataMapping current = TaskToFutureAdapter.await("getDiagnosisKeysDataMapping",
+              exposureNotificationClient.getDiagnosisKeysDataMapping(), DATA_MAPPING_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+      if (mappings.equals(current)) {
+        SharedPrefs.setString(DATA_MAPPING_FINGERPRINT, fingerprint, appContext);
+        Events.raiseEvent(Events.INFO, "DiagnosisKeysDataMapping already applied");
+        return;
+      }
     } catch (Exception e) {
-      // ignore
       Events.raiseError("getDiagnosisKeysDataMapping", e);
     }
-    if (!currentMap.equals(mappings)) {
-      try {
-        Tasks.await(exposureNotificationClient.setDiagnosisKeysDataMapping(mappings));
-        Events.raiseEvent(Events.INFO, "Setting DiagnosisKeysDataMapping");
-      } catch (Exception e) {
-        // ignore
-        Events.raiseError("setDiagnosisKeysDataMapping", e);
-      }
+
+    try {
+      // set is rate limited by the OS, only record the fingerprint once it has been applied
+      TaskToFutureAdapter.await("setDiagnosisKeysDataMapping",
+              exposureNotificationClient.setDiagnosisKeysDataMapping(mappings), DATA_MAPPING_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+      SharedPrefs.setString(DATA_MAPPING_FINGERPRINT, fingerprint, appContext);
+      Events.raiseEvent(Events.INFO, "Setting DiagnosisKeysDataMapping");
+    } catch (Exception e) {
+      Events.raiseError("setDiagnosisKeysDataMapping", e);
     }
-    return;
+  }
+
+  // forces the next submission to check the mapping again, e.g. after ENS rejected it
+  public void invalidateDiagnosisKeysDataMapping() {
+    SharedPrefs.remove(DATA_MAPPING_FINGERPRINT, appContext);
+  }
+
+  private static String dataMappingFingerprint(int[] onsetType) {
+    // covers every input of the mapping, bump the prefix if the mapping logic changes
+    return "v1:" + Arrays.toString(onsetType);
   }
 
   public boolean deviceSupportsLocationlessScanning() {
-    return exposureNotificationClient.deviceSupportsLocationlessScanning();
+    Boolean supported = locationlessScanning.get();
+    if (supported == null) {
+      long generation = locationlessScanning.generation();
+      supported = exposureNotificationClient.deviceSupportsLocationlessScanning();
+      locationlessScanning.set(supported, generation);
+    }
+    return supported;
   }
 
   public Task<List<ExposureWindow>> getExposureWindows() {
@@ -200,8 +260,55 @@ public class ExposureNotificationClientWrapper {
   }
   
   public Task<Long> getDeviceENSVersion() {
-    return exposureNotificationClient.getVersion();
+    return cached(version, exposureNotificationClient::getVersion);
   }
-    
 
+  private static <T> Task<T> cached(CachedValue<T> cache, TaskSupplier<T> call) {
+    T value = cache.get();
+    if (value != null) {
+      return Tasks.forResult(value);
+    }
+    long generation = cache.generation();
+    return call.get().addOnSuccessListener(result -> cache.set(result, generation));
+  }
+
+  private interface TaskSupplier<T> {
+    Task<T> get();
+  }
+
+  private static class CachedValue<T> {
+    private final long ttlMillis;
+    private T value;
+    private long expiresAt;
+    private long generation;
+
+    CachedValue(Duration ttl) {
+      this.ttlMillis = ttl.toMillis();
+    }
+
+    synchronized T get() {
+      if (value == null || System.currentTimeMillis() >= expiresAt) {
+        return null;
+      }
+      return value;
+    }
+
+    synchronized long generation() {
+      return generation;
+    }
+
+    // results from calls started before an invalidate are dropped
+    synchronized void set(T result, long startedGeneration) {
+      if (result == null || startedGeneration != generation) {
+        return;
+      }
+      value = result;
+      expiresAt = System.currentTimeMillis() + ttlMillis;
+    }
+
+    synchronized void invalidate() {
+      value = null;
+      generation++;
+    }
+  }
 }
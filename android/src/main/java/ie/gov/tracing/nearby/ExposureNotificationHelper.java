@@ -88,6 +88,7 @@ public class ExposureNotificationHelper implements LifecycleObserver {
 
   public static ListenableFuture<Boolean> isEnabled() {
     return TaskToFutureAdapter.getFutureWithTimeout(
+        "isEnabled",
         ExposureNotificationClientWrapper.get(Tracing.reactContext).isEnabled(),
         API_TIMEOUT.toMillis(),
         TimeUnit.MILLISECONDS,
@@ -96,6 +97,7 @@ public class ExposureNotificationHelper implements LifecycleObserver {
 
   private static ListenableFuture<Void> start() {
     return TaskToFutureAdapter.getFutureWithTimeout(
+        "start",
         ExposureNotificationClientWrapper.get(Tracing.reactContext).start(),
         API_TIMEOUT.toMillis(),
         TimeUnit.MILLISECONDS,
@@ -104,6 +106,7 @@ public class ExposureNotificationHelper implements LifecycleObserver {
 
   private static ListenableFuture<Void> stop() {
     return TaskToFutureAdapter.getFutureWithTimeout(
+        "stop",
         ExposureNotificationClientWrapper.get(Tracing.reactContext).stop(),
         API_TIMEOUT.toMillis(),
         TimeUnit.MILLISECONDS,
@@ -112,6 +115,7 @@ public class ExposureNotificationHelper implements LifecycleObserver {
 
   public static ListenableFuture<Long> getDeviceENSVersion() {
     return TaskToFutureAdapter.getFutureWithTimeout(
+            "getVersion",
             ExposureNotificationClientWrapper.get(Tracing.reactContext).getDeviceENSVersion(),
             API_TIMEOUT.toMillis(),
             TimeUnit.MILLISECONDS,
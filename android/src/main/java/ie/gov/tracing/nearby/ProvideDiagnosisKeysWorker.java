@@ -174,6 +174,7 @@ public class ProvideDiagnosisKeysWorker extends ListenableWorker {
 
         return FluentFuture.from(TaskToFutureAdapter
                 .getFutureWithTimeout(
+                        "isEnabled",
                         ExposureNotificationClientWrapper.get(this.context).isEnabled(),
                         DEFAULT_API_TIMEOUT.toMillis(),
                         TimeUnit.MILLISECONDS,
@@ -205,6 +206,7 @@ public class ProvideDiagnosisKeysWorker extends ListenableWorker {
                           if (config.getDisableENSChecks()) {
                             Events.raiseEvent(Events.INFO, "ProvideDiagnosisKeysWorker.startWork Disable ENS");
                             return FluentFuture.from(TaskToFutureAdapter.getFutureWithTimeout(
+                                    "stop",
                                     ExposureNotificationClientWrapper.get(context).stop(),
                                     DEFAULT_API_TIMEOUT.toMillis(),
                                     TimeUnit.MILLISECONDS,
@@ -215,6 +217,12 @@ public class ProvideDiagnosisKeysWorker extends ListenableWorker {
                                       Tracing.setExposureStatus(Tracing.STATUS_STOPPED, "disabled", false);
                                       return Futures.immediateFailedFuture(new NotEnabledException());
                                     }, AppExecutors.getBackgroundExecutor());
+                          } else if (DiagnosisKeysQuota.available(context) == 0) {
+                            // ENS would reject the submission, don't spend bandwidth on exports
+                            long nextAvailable = DiagnosisKeysQuota.nextAvailableAt(context);
+                            SharedPrefs.setString("lastError", "provideDiagnosisKeys quota used, next available: " + new Date(nextAvailable), context);
+                            Events.raiseEvent(Events.INFO, "ProvideDiagnosisKeysWorker.startWork quota used, skipping download until " + new Date(nextAvailable));
+                            return Futures.immediateFailedFuture(new QuotaExhaustedException());
                           } else {
                             return diagnosisKeys.download(config.getNumFilesAndroid());
                           }
@@ -238,6 +246,9 @@ public class ProvideDiagnosisKeysWorker extends ListenableWorker {
                           return Result.success(); // not enabled, just return success
                         },
                         AppExecutors.getBackgroundExecutor())
+                .catching(QuotaExhaustedException.class,
+                        ex -> Result.success(), // the periodic run after the quota frees up picks this up
+                        AppExecutors.getBackgroundExecutor())
                 .catching(Exception.class, this::processFailure,
                         AppExecutors.getBackgroundExecutor());
       } catch(Exception ex) {
@@ -417,4 +428,6 @@ public class ProvideDiagnosisKeysWorker extends ListenableWorker {
   }
 
   private static class NotEnabledException extends Exception {}
+
+  private static class QuotaExhaustedException extends Exception {}
 }
\ No newline at end of file
@@ -50,9 +50,9 @@ import ie.gov.tracing.Tracing;
 import ie.gov.tracing.common.AppExecutors;
 import ie.gov.tracing.common.Events;
 import ie.gov.tracing.common.ExposureConfig;
+import ie.gov.tracing.common.ExposureConfigCache;
 import ie.gov.tracing.nearby.riskcalculation.RiskCalculation;
-import ie.gov.tracing.nearby.riskcalculation.RiskCalculationV1;
-import ie.gov.tracing.nearby.riskcalculation.RiskCalculationV2;
+import ie.gov.tracing.nearby.riskcalculation.RiskEngines;
 import ie.gov.tracing.network.Certificate;
 import ie.gov.tracing.network.Fetcher;
 import ie.gov.tracing.network.PublishG;
@@ -70,6 +70,8 @@ public class StateUpdatedWorker extends ListenableWorker {
     public static final String ACTION_LAUNCH_FROM_EXPOSURE_NOTIFICATION =
             "com.google.android.apps.exposurenotification.ACTION_LAUNCH_FROM_EXPOSURE_NOTIFICATION";
 
+    public static final String LAST_RESULT_KEY = "lastRiskResultKey";
+
     private final Context context;
     private final ExposureNotificationRepository repository;
 
@@ -119,16 +121,10 @@ public class StateUpdatedWorker extends ListenableWorker {
             final int simulateDays = getInputData().getInt("simulateDays", 3);
             final boolean sendChaff = getInputData().getBoolean("sendChaff", false);
             final String action = getInputData().getString("action");
-            boolean inV2Mode = false;
             boolean chaffEnabled = false;
             int chaffWindow = 5;
-            ExposureConfig config = null;
-
-            Gson gson = new Gson();
-            String configData = SharedPrefs.getString("exposureConfig", this.context);
-            if (!configData.isEmpty()) {
-                config = gson.fromJson(configData, ExposureConfig.class);
-                inV2Mode = config.getV2Mode();
+            ExposureConfig config = ExposureConfigCache.get(this.context);
+            if (config != null) {
                 chaffEnabled = config.getChaffEnabled();
                 chaffWindow = config.getChaffWindow();
             }
@@ -138,23 +134,25 @@ public class StateUpdatedWorker extends ListenableWorker {
             ExposureNotificationClientWrapper exposureNotificationClient = ExposureNotificationClientWrapper.get(context);
             final String token = getInputData().getString(ExposureNotificationClient.EXTRA_TOKEN);
 
-            Events.raiseEvent(Events.INFO, "Beginning ENS result checking, v2 mode: " + inV2Mode);
-            RiskCalculation risk;
+            Events.raiseEvent(Events.INFO, "Beginning ENS result checking, risk engine: " + RiskEngines.nameFor(config));
 
             if (ExposureNotificationClient.ACTION_EXPOSURE_NOT_FOUND.equals(action)) {
                 Events.raiseEvent(Events.INFO, "No keys matched, ending processing");
                 generateChaffRequest(sendChaff, finalChaffWindow, finalChaffEnabled);
                 return Futures.immediateFuture(Result.success());
             }
-            if (inV2Mode) {
-                risk = new RiskCalculationV2(config);
-            } else {
-                risk = new RiskCalculationV1(repository, token);
-            }
+            RiskCalculation risk = RiskEngines.select(config, repository, token);
 
             return FluentFuture.from(risk.processKeys(context, simulate, simulateDays))
                     .transform(exposureEntity -> {
 
+                        // a repeat broadcast over the same windows and config was already handled
+                        String resultKey = risk.getResultKey();
+                        if (resultKey != null && resultKey.equals(SharedPrefs.getString(LAST_RESULT_KEY, context))) {
+                            Events.raiseEvent(Events.INFO, "Risk result unchanged since the last check, ending");
+                            return Futures.immediateFuture(true);
+                        }
+
                         if (exposureEntity == null) {
                             Events.raiseEvent(Events.INFO, "No exposure returned, ending");
                             return Futures.immediateFuture(true);
@@ -193,6 +191,10 @@ public class StateUpdatedWorker extends ListenableWorker {
 
                     }, AppExecutors.getLightweightExecutor())
                     .transform(done -> {
+                        String resultKey = risk.getResultKey();
+                        if (resultKey != null) {
+                            SharedPrefs.setString(LAST_RESULT_KEY, resultKey, context);
+                        }
                         generateChaffRequest(sendChaff, finalChaffWindow, finalChaffEnabled);
                         return Result.success(); // all done, do tidy ups here
                     }, AppExecutors.getLightweightExecutor())
@@ -0,0 +1,73 @@
+package ie.gov.tracing.nearby.riskcalculation;
+
+import java.util.Arrays;
+
+import ie.gov.tracing.common.ExposureConfig;
+
+// attenuation in dB to bucket index, ENS reports attenuation as a single byte so every
+// possible value gets an entry and classifying a scan is one array read
+final class AttenuationTable {
+    static final int SIZE = 256;
+
+    private static AttenuationTable cached;
+
+    private final int[] thresholds;
+    private final byte[] buckets = new byte[SIZE];
+    // false when the thresholds can't be expressed as ranges, lookups then walk the thresholds,
+    // AttenuationTableTest checks every value against the original linear walk
+    private final boolean valid;
+
+    AttenuationTable(int[] thresholds) {
+        this.thresholds = thresholds.clone();
+        valid = ascending(thresholds);
+        if (!valid) {
+            return;
+        }
+
+        // fill each bucket's range up to its threshold, anything above the last goes to the last bucket
+        int from = 0;
+        for (int i = 0; i < thresholds.length && i < ScanAggregator.BUCKETS - 1; i++) {
+            int to = Math.min(thresholds[i], SIZE - 1);
+            for (int a = from; a <= to; a++) {
+                buckets[a] = (byte) i;
+            }
+            from = Math.max(from, to + 1);
+        }
+        for (int a = from; a < SIZE; a++) {
+            buckets[a] = (byte) (ScanAggregator.BUCKETS - 1);
+        }
+    }
+
+    // built once per config, ExposureConfigCache hands out the same thresholds until the config changes
+    static synchronized AttenuationTable forConfig(ExposureConfig config) {
+        int[] thresholds = config.getAttenuationDurationThresholds();
+        if (cached == null || !Arrays.equals(cached.thresholds, thresholds)) {
+            cached = new AttenuationTable(thresholds);
+        }
+        return cached;
+    }
+
+    // ranges only match the first-match walk when thresholds never decrease
+    private static boolean ascending(int[] thresholds) {
+        if (thresholds.length > ScanAggregator.BUCKETS - 1) {
+            return false;
+        }
+        for (int i = 1; i < thresholds.length; i++) {
+            if (thresholds[i] < thresholds[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean usesTable() {
+        return valid;
+    }
+
+    int bucketOf(int attenuation) {
+        if (valid && attenuation >= 0 && attenuation < SIZE) {
+            return buckets[attenuation];
+        }
+        return ScanAggregator.bucketOf(thresholds, attenuation);
+    }
+}
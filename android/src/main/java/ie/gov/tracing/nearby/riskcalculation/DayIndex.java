@@ -0,0 +1,103 @@
+package ie.gov.tracing.nearby.riskcalculation;
+
+import com.google.android.gms.nearby.exposurenotification.DailySummary;
+import com.google.android.gms.nearby.exposurenotification.ExposureWindow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// windows and daily summaries grouped by epoch day once, arrays are offset from the earliest day
+// so every per-day lookup is a direct index instead of a scan over all windows
+final class DayIndex {
+    private final long firstDay;
+    private final int[] start;
+    private final int[] order;
+    private final DailySummary[] summaries;
+
+    DayIndex(List<ExposureWindow> windows, List<DailySummary> dailySummaries) {
+        int windowCount = windows.size();
+        long[] windowDays = new long[windowCount];
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+
+        for (int i = 0; i < windowCount; i++) {
+            windowDays[i] = dayOf(windows.get(i).getDateMillisSinceEpoch());
+            min = Math.min(min, windowDays[i]);
+            max = Math.max(max, windowDays[i]);
+        }
+        for (int i = 0; i < dailySummaries.size(); i++) {
+            long day = dailySummaries.get(i).getDaysSinceEpoch();
+            min = Math.min(min, day);
+            max = Math.max(max, day);
+        }
+        if (min > max) {
+            min = max = 0;
+        }
+
+        firstDay = min;
+        int span = (int) (max - min + 1);
+
+        // counting sort keeps windows in their original order within a day
+        start = new int[span + 1];
+        for (int i = 0; i < windowCount; i++) {
+            start[(int) (windowDays[i] - firstDay) + 1]++;
+        }
+        for (int d = 0; d < span; d++) {
+            start[d + 1] += start[d];
+        }
+        order = new int[windowCount];
+        int[] next = new int[span];
+        System.arraycopy(start, 0, next, 0, span);
+        for (int i = 0; i < windowCount; i++) {
+            order[next[(int) (windowDays[i] - firstDay)]++] = i;
+        }
+
+        summaries = new DailySummary[span];
+        for (int i = 0; i < dailySummaries.size(); i++) {
+            DailySummary summary = dailySummaries.get(i);
+            int offset = (int) (summary.getDaysSinceEpoch() - firstDay);
+            if (summaries[offset] == null) {
+                summaries[offset] = summary;
+            }
+        }
+    }
+
+    static long dayOf(long millisSinceEpoch) {
+        return TimeUnit.DAYS.convert(millisSinceEpoch, TimeUnit.MILLISECONDS);
+    }
+
+    // indexes into the window list passed in, in their original order
+    int[] windowsOn(long day) {
+        int offset = offset(day);
+        return offset < 0 ? new int[0] : windowsAt(offset);
+    }
+
+    // days are addressed by offset from the earliest one, 0 until span() - 1
+    int span() {
+        return summaries.length;
+    }
+
+    int[] windowsAt(int offset) {
+        int[] result = new int[start[offset + 1] - start[offset]];
+        System.arraycopy(order, start[offset], result, 0, result.length);
+        return result;
+    }
+
+    DailySummary summaryAt(int offset) {
+        return summaries[offset];
+    }
+
+    static List<ExposureWindow> select(List<ExposureWindow> windows, int[] rows) {
+        List<ExposureWindow> selected = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            selected.add(windows.get(row));
+        }
+        return selected;
+    }
+
+    private int offset(long day) {
+        long offset = day - firstDay;
+        return offset < 0 || offset >= summaries.length ? -1 : (int) offset;
+    }
+}
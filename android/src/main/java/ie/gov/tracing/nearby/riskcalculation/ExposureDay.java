@@ -0,0 +1,78 @@
+package ie.gov.tracing.nearby.riskcalculation;
+
+import com.google.android.gms.nearby.exposurenotification.DailySummary;
+import com.google.android.gms.nearby.exposurenotification.ExposureWindow;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// a day with a valid daily summary or with windows, its windows are scored the first time the
+// day's windows or bucket sums are asked for so days nobody looks at are never scored
+final class ExposureDay {
+
+    interface Scorer {
+        // rows index into the window list the days were extracted from
+        ScanAggregator.Result score(int[] rows);
+    }
+
+    // null when ENS returned windows for the day but no valid summary
+    final DailySummary summary;
+    final int[] rows;
+
+    private final List<ExposureWindow> allWindows;
+    private final Scorer scorer;
+    private List<WindowData> windows;
+    private ScanData totals;
+
+    private ExposureDay(DailySummary summary, int[] rows, List<ExposureWindow> allWindows, Scorer scorer) {
+        this.summary = summary;
+        this.rows = rows;
+        this.allWindows = allWindows;
+        this.scorer = scorer;
+    }
+
+    // every day, newest first, in one walk over the day index, nothing is scored here
+    static List<ExposureDay> extractDays(DayIndex index, List<ExposureWindow> windows, Scorer scorer) {
+        List<ExposureDay> days = new ArrayList<>();
+        for (int offset = index.span() - 1; offset >= 0; offset--) {
+            DailySummary summary = index.summaryAt(offset);
+            int[] rows = index.windowsAt(offset);
+            if (summary == null && rows.length == 0) continue;
+
+            days.add(new ExposureDay(summary, rows, windows, scorer));
+        }
+        return days;
+    }
+
+    List<WindowData> windows() {
+        score();
+        return windows;
+    }
+
+    ScanData totals() {
+        score();
+        return totals;
+    }
+
+    // true when at least one window exceeds the thresholds on its own
+    boolean exceedsThresholds() {
+        return totals().getExceedsThresholds();
+    }
+
+    private void score() {
+        if (totals != null) return;
+
+        ScanAggregator.Result scans = scorer.score(rows);
+        List<WindowData> windowItems = new ArrayList<>(scans.count);
+        boolean exceeds = false;
+        for (int i = 0; i < scans.count; i++) {
+            ExposureWindow window = allWindows.get(rows[i]);
+            windowItems.add(new WindowData(window.getDateMillisSinceEpoch(), window.getCalibrationConfidence(), window.getReportType(), window.getInfectiousness(), scans.toScanData(i)));
+            exceeds |= scans.exceedsThresholds[i];
+        }
+        ScanData sums = RiskCalculationV2.sumDurations(windowItems);
+        sums.setExceedsThresholds(exceeds);
+        windows = windowItems;
+        totals = sums;
+    }
+}
@@ -8,4 +8,8 @@ import ie.gov.tracing.storage.ExposureEntity;
 
 public interface RiskCalculation {
     ListenableFuture<ExposureEntity> processKeys(Context context, Boolean simulate, Integer simulateDays);
+
+    // identifies the config and ENS data behind the last processKeys result, the same key means the
+    // same result, null when the result can't be keyed
+    String getResultKey();
 }
@@ -14,34 +14,30 @@ import java.util.concurrent.atomic.AtomicReference;
 
 import ie.gov.tracing.common.AppExecutors;
 import ie.gov.tracing.common.Events;
+import ie.gov.tracing.common.ExposureConfig;
 import ie.gov.tracing.common.TaskToFutureAdapter;
 import ie.gov.tracing.nearby.ExposureNotificationClientWrapper;
 import ie.gov.tracing.storage.ExposureEntity;
 import ie.gov.tracing.storage.ExposureNotificationRepository;
-import ie.gov.tracing.storage.SharedPrefs;
 import static ie.gov.tracing.nearby.ProvideDiagnosisKeysWorker.DEFAULT_API_TIMEOUT;
 
 public class RiskCalculationV1 implements RiskCalculation {
+    private static final double[] SIMULATE_THRESHOLD_WEIGHTINGS = new double[]{1, 1, 0};
+    private static final long SIMULATE_TIME_THRESHOLD = 15;
+
     private final ExposureNotificationRepository repository;
     private final String ensToken;
+    private final ExposureConfig ensConfig;
 
-    public RiskCalculationV1(ExposureNotificationRepository reposit, String token) {
+    public RiskCalculationV1(ExposureNotificationRepository reposit, String token, ExposureConfig config) {
         repository = reposit;
         ensToken = token;
+        ensConfig = config;
     }
 
-    private static double[] doubleArrayFromString(String string) {
-        try {
-            String[] strings = string.replace("[", "").replace("]", "").split(", ");
-            double[] result = new double[strings.length];
-            for (int i = 0; i < result.length; i++) {
-                result[i] = Double.parseDouble(strings[i]);
-            }
-            return result;
-        } catch (Exception ex) {
-            Events.raiseError("Cannot parse double array", ex);
-        }
-        return null;
+    static double totalTime(double[] thresholdWeightings, int[] attenuationDurations) {
+        return thresholdWeightings[0] * attenuationDurations[0] + thresholdWeightings[1] * attenuationDurations[1]
+                + thresholdWeightings[2] * attenuationDurations[2];
     }
 
     private ExposureSummary buildSimulateSummary(int numDays) {
@@ -55,11 +51,17 @@ public class RiskCalculationV1 implements RiskCalculation {
             .build();
     }
 
+    // v1 results are tied to the token of each broadcast
+    public String getResultKey() {
+        return null;
+    }
+
     public ListenableFuture<ExposureEntity> processKeys(Context context, Boolean simulate, Integer simulateDays) {
         Events.raiseEvent(Events.INFO, "Running v1 risk checks");
         AtomicReference<ExposureEntity> exposureEntity = new AtomicReference<>(null);
 
         return FluentFuture.from(TaskToFutureAdapter.getFutureWithTimeout(
+                "getExposureSummary",
                 ExposureNotificationClientWrapper.get(context).getExposureSummary(ensToken),
                 DEFAULT_API_TIMEOUT.toMillis(),
                 TimeUnit.MILLISECONDS,
@@ -95,11 +97,14 @@ public class RiskCalculationV1 implements RiskCalculation {
                     double[] tw;
                     long timeThreshold;
                     if (simulate) {
-                        tw = doubleArrayFromString("[1, 1, 0]");
-                        timeThreshold = 15;
+                        tw = SIMULATE_THRESHOLD_WEIGHTINGS;
+                        timeThreshold = SIMULATE_TIME_THRESHOLD;
+                    } else if (ensConfig != null) {
+                        tw = ensConfig.getThresholdWeightings();
+                        timeThreshold = ensConfig.getTimeThreshold();
                     } else {
-                        tw = doubleArrayFromString(SharedPrefs.getString("thresholdWeightings", context));
-                        timeThreshold = SharedPrefs.getLong("timeThreshold", context);
+                        tw = null;
+                        timeThreshold = 0;
                     }
 
                     if (tw == null || tw.length != 3 || timeThreshold <= 0) {
@@ -112,7 +117,7 @@ public class RiskCalculationV1 implements RiskCalculation {
                             Arrays.toString(ad) + ", using " + "thresholdWeightings: " + Arrays.toString(tw) +
                             ", exceeds the timeThreshold: " + timeThreshold);
 
-                    double totalTime = tw[0] * ad[0] + tw[1] * ad[1] + tw[2] * ad[2];
+                    double totalTime = totalTime(tw, ad);
 
                     if (totalTime < timeThreshold) {
                         Events.raiseEvent(Events.INFO, "exposureSummary - totalTime: " + totalTime +
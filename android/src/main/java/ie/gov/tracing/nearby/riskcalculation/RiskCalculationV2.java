@@ -3,37 +3,76 @@ package ie.gov.tracing.nearby.riskcalculation;
 import android.content.Context;
 import com.google.android.gms.nearby.exposurenotification.DailySummary;
 import com.google.android.gms.nearby.exposurenotification.ExposureWindow;
-import com.google.android.gms.nearby.exposurenotification.ScanInstance;
 import com.google.common.util.concurrent.FluentFuture;
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 
+import org.checkerframework.checker.nullness.compatqual.NullableDecl;
 import org.jetbrains.annotations.NotNull;
 
 import ie.gov.tracing.common.AppExecutors;
 import ie.gov.tracing.common.Events;
 import ie.gov.tracing.common.ExposureConfig;
+import ie.gov.tracing.common.ExposureConfigCache;
 import ie.gov.tracing.common.TaskToFutureAdapter;
 import ie.gov.tracing.nearby.ExposureNotificationClientWrapper;
 import ie.gov.tracing.storage.ExposureEntity;
+import ie.gov.tracing.storage.ExposureNotificationRepository;
+import ie.gov.tracing.storage.SharedPrefs;
+import ie.gov.tracing.storage.WindowDigestEntity;
+
+import org.threeten.bp.Duration;
 
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
-import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import static ie.gov.tracing.nearby.ProvideDiagnosisKeysWorker.DEFAULT_API_TIMEOUT;
 
 public class RiskCalculationV2 implements RiskCalculation {
 
+    private static final long DIGEST_RETENTION_MS = TimeUnit.DAYS.toMillis(15);
+    private static final Duration DIGEST_LOAD_TIMEOUT = Duration.ofSeconds(2);
+
     ExposureConfig ensConfig;
+    private ExposureNotificationRepository repository;
+    private long configVersion;
+    private Map<String, WindowDigestEntity> digests = Collections.emptyMap();
+    private WindowDigests.Batch batch;
+    private RiskCalculationV2 shadow;
+    private volatile String resultKey;
+    // windows scored during this check, written to the digest table together once it's done,
+    // windows the early exits skip are never scored or written
+    private final Map<String, WindowDigestEntity> scored = new LinkedHashMap<>();
 
     public RiskCalculationV2(ExposureConfig config) {
             ensConfig = config;
         }
 
+    public String getResultKey() {
+        return resultKey;
+    }
+
+    // name used in logs and to keep this engine's window digests apart from other engines
+    protected String engineName() {
+        return "v2";
+    }
+
+    protected ScanAggregator createAggregator(ExposureConfig config) {
+        return new ScanAggregator(config);
+    }
+
+    // scored against the same summaries and windows as this engine, its result is only logged
+    void setShadow(RiskCalculationV2 shadow) {
+        this.shadow = shadow;
+    }
+
     @NotNull
     private ExposureEntity buildSimulatedExposureEntity(int simulateDays) {
 
@@ -55,35 +94,8 @@ public class RiskCalculationV2 implements RiskCalculation {
         return entity;
     }
 
-    private List<WindowData> extractExposureWindows(List<ExposureWindow> windows, Long daysSinceEpoch, ExposureConfig config) {
-        List<ExposureWindow> matchWindows = windows;
-
-        if (!config.getContiguousMode()) {
-            matchWindows = new ArrayList<>();
-
-            for (int i = 0; i < windows.size(); i++) {
-                ExposureWindow window = windows.get(i);
-                long days = TimeUnit.DAYS.convert(window.getDateMillisSinceEpoch(), TimeUnit.MILLISECONDS);
-                if (days == daysSinceEpoch) {
-                    matchWindows.add(window);
-                }
-            }
-        }
-
-        List<WindowData> windowList = new ArrayList<>();
-
-        for (int i = 0; i < matchWindows.size(); i++) {
-            ExposureWindow window = matchWindows.get(i);
-            ScanData scan = buildScanData(config, window.getScanInstances());
-            WindowData item = new WindowData(window.getDateMillisSinceEpoch(), window.getCalibrationConfidence(), window.getReportType(), window.getInfectiousness(), scan);
-
-            windowList.add(item);
-        }
-
-        return windowList;
-    }
-
-        private ExposureEntity constructSummaryInfo(DailySummary summary, List<WindowData> windows) {
+    private ExposureEntity constructSummaryInfo(ExposureDay day) {
+        DailySummary summary = day.summary;
         Calendar today = Calendar.getInstance();
         today.set(Calendar.HOUR_OF_DAY, 0);
         today.set(Calendar.MINUTE, 0);
@@ -93,14 +105,7 @@ public class RiskCalculationV2 implements RiskCalculation {
         long daysSinceExposure =  todaySinceEpoch - summary.getDaysSinceEpoch();
         today.add(Calendar.DATE, 0 - new Long(daysSinceExposure).intValue());
 
-        List<WindowData> filteredWindows = new ArrayList<>();
-        for (int i = 0; i < windows.size(); i++) {
-            long dayVal = TimeUnit.DAYS.convert(windows.get(i).getDate(), TimeUnit.MILLISECONDS);
-            if (dayVal == summary.getDaysSinceEpoch()) {
-                filteredWindows.add(windows.get(i));
-            }
-        }
-        ScanData summedDurations = sumDurations(filteredWindows);
+        ScanData summedDurations = day.totals();
 
         // store field as a string (otherwise we'd need a new table)
         String attenuationDurations = "";
@@ -111,170 +116,228 @@ public class RiskCalculationV2 implements RiskCalculation {
             }
         }
         ExposureEntity entity = new ExposureEntity(new Long(daysSinceExposure).intValue(), -1, new Double(summary.getSummaryData().getMaximumScore()).intValue(), new Double(summary.getSummaryData().getScoreSum()).intValue(), attenuationDurations, today.getTimeInMillis());
-        entity.setWindows(filteredWindows);
+        entity.setWindows(day.windows());
 
         return entity;
     }
 
-    private ScanData sumDurations(List<WindowData> windows) {
-        ScanData scanData = new ScanData();
-
-        for (WindowData window : windows) {
-         for (int i = 0; i < scanData.getWeightedBuckets().length; i++) {
-             scanData.getBuckets()[i] += window.getScanData().getBuckets()[i];
-             scanData.getWeightedBuckets()[i] += window.getScanData().getWeightedBuckets()[i];
-         }
+    static ScanData sumDurations(List<WindowData> windows) {
+        int[] buckets = new int[ScanAggregator.BUCKETS];
+        int[] weightedBuckets = new int[ScanAggregator.BUCKETS];
+
+        for (int w = 0; w < windows.size(); w++) {
+            ScanData scanData = windows.get(w).getScanData();
+            int[] windowBuckets = scanData.getBuckets();
+            int[] windowWeighted = scanData.getWeightedBuckets();
+            for (int i = 0; i < ScanAggregator.BUCKETS; i++) {
+                buckets[i] += windowBuckets[i];
+                weightedBuckets[i] += windowWeighted[i];
+            }
         }
-        scanData.setNumScans(windows.size());
-        return scanData;
+        return new ScanData(buckets, weightedBuckets, false, windows.size());
     }
 
-    private ScanData buildScanData(ExposureConfig config, List<ScanInstance> scanData) {
-        ScanData scanItem = new ScanData();
-        scanItem.setNumScans(scanData.size());
-        double[] thresholdWeightings = new double[]{config.getImmediateDurationWeight(), config.getNearDurationWeight(), config.getMediumDurationWeight(), config.getOtherDurationWeight()};
-
-        for (ScanInstance scan : scanData) {
-            Boolean added = false;
-            for (int i = 0; i < config.getAttenuationDurationThresholds().length; i++) {
-                if (scan.getTypicalAttenuationDb() <= config.getAttenuationDurationThresholds()[i]) {
-                    scanItem.getWeightedBuckets()[i] += scan.getSecondsSinceLastScan() / 60 * thresholdWeightings[i] / 100.0;
-                    scanItem.getBuckets()[i] += scan.getSecondsSinceLastScan() / 60;
-                    added = true;
-                    break;
-                }
-            }
-            if (!added) {
-                int lastBucket = scanItem.getBuckets().length - 1;
-                scanItem.getWeightedBuckets()[lastBucket] += scan.getSecondsSinceLastScan() / 60 * thresholdWeightings[lastBucket] / 100.0;
-                scanItem.getBuckets()[lastBucket] += scan.getSecondsSinceLastScan() / 60;
+    private ExposureEntity buildExposureEntity(List<DailySummary> dailySummaries, List<ExposureWindow> exposureWindows, ExposureConfig config) {
+
+        List<DailySummary> valid = new ArrayList<>();
+        for (int i = 0; i < dailySummaries.size(); i++) {
+            DailySummary summary = dailySummaries.get(i);
+            if (summary.getSummaryData().getMaximumScore() >= config.getMinimumRiskScoreFullRange()) {
+                valid.add(summary);
             }
         }
 
-        int totalTime = 0;
-        for (int i = 0; i < scanItem.getWeightedBuckets().length; i++) {
-            totalTime += scanItem.getWeightedBuckets()[i];
-        }
-        if (totalTime >= config.getTimeThreshold()) {
-            scanItem.setExceedsThresholds(true);
+        if (valid.isEmpty()) {
+            Events.raiseEvent(Events.INFO, "V2 - No valid daily summaries");
+            return null;
         }
-        return scanItem;
-    }
 
-    private List<WindowData> filterForExceededWindows(List<WindowData> windows) {
+        DayIndex index = new DayIndex(exposureWindows, valid);
+        ScanAggregator aggregator = createAggregator(config);
+        // days are only scored when a mode looks at them, older days are usually never scored
+        List<ExposureDay> days = ExposureDay.extractDays(index, exposureWindows, rows -> aggregate(aggregator, rows));
 
-        List<WindowData> filtered = new ArrayList<>();
+        if (config.getContiguousMode()) {
+            // the newest day with a window that exceeds the thresholds on its own
+            for (ExposureDay day : days) {
+                if (!day.exceedsThresholds()) continue;
 
-        for (int i = 0; i < windows.size(); i++) {
-            if (windows.get(i).getScanData().getExceedsThresholds()) {
-                filtered.add(windows.get(i));
+                if (day.summary == null) {
+                    Events.raiseEvent(Events.INFO, "V2 - Unable to find day to match window");
+                    return null;
+                }
+                return constructSummaryInfo(day);
             }
+            Events.raiseEvent(Events.INFO, "V2 - Running in Contiguous mode, no contiguos match");
+            return null;
+        } else {
+            // the latest valid day is reported, only its windows are scored
+            for (ExposureDay day : days) {
+                if (day.summary != null) {
+                    return constructSummaryInfo(day);
+                }
+            }
+            return null;
         }
-
-        Collections.sort(filtered, (obj1, obj2) -> Long.valueOf(obj2.getDate()).compareTo(obj1.getDate()));
-
-        return filtered;
     }
 
-    private DailySummary findDay(List<DailySummary> summaries, long day) {
-
-        for (int i = 0; i < summaries.size(); i++) {
-            if (summaries.get(i).getDaysSinceEpoch() == day) {
-                return summaries.get(i);
+    // windows scored by an earlier broadcast under the same config reuse their stored aggregates,
+    // rows index into the broadcast's batch
+    private ScanAggregator.Result aggregate(ScanAggregator aggregator, int[] rows) {
+        int count = rows.length;
+        ScanData[] known = new ScanData[count];
+        String[] keys = new String[count];
+
+        for (int i = 0; i < count; i++) {
+            int row = rows[i];
+            keys[i] = digestKey(batch.digests[row]);
+            WindowDigestEntity digest = digests.get(keys[i]);
+            if (digest != null && digest.getConfigVersion() == configVersion) {
+                known[i] = new ScanData(digest.getBuckets(), digest.getWeightedBuckets(), digest.getExceedsThresholds(), batch.packed[row].length / WindowDigests.VALUES_PER_SCAN);
             }
         }
-        return null;
+
+        ScanAggregator.Result result = aggregator.aggregate(DayIndex.select(batch.windows, rows), known);
+
+        int scoredCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (known[i] != null) continue;
+            ExposureWindow window = batch.windows.get(rows[i]);
+            ScanData scanData = result.toScanData(i);
+            scored.put(keys[i], WindowDigestEntity.create(keys[i], window.getDateMillisSinceEpoch(), window.getCalibrationConfidence(),
+                    window.getReportType(), window.getInfectiousness(), batch.packed[rows[i]], configVersion,
+                    scanData.getBuckets(), scanData.getWeightedBuckets(), scanData.getExceedsThresholds()));
+            scoredCount++;
+        }
+        Events.raiseEvent(Events.INFO, engineName() + " - windows scored: " + scoredCount + ", reused: " + (count - scoredCount));
+        return result;
     }
 
-    private ExposureEntity buildExposureEntity(List<DailySummary> dailySummaries, List<ExposureWindow> exposureWindows, ExposureConfig config) {
+    private void persistDigests() {
+        if (repository == null || scored.isEmpty()) return;
 
-        Collections.sort(dailySummaries, (obj1, obj2) -> {
-            // ## descending order
-            return Integer.valueOf(obj2.getDaysSinceEpoch()).compareTo(obj1.getDaysSinceEpoch());
-        });
+        List<WindowDigestEntity> entities = new ArrayList<>(scored.values());
+        scored.clear();
+        Futures.addCallback(repository.upsertWindowDigestsAsync(entities), new FutureCallback<Void>() {
+            @Override
+            public void onSuccess(@NullableDecl Void result) {
+                Events.raiseEvent(Events.INFO, engineName() + " - window digests stored: " + entities.size());
+            }
 
-        List<DailySummary> valid = new ArrayList<>();
-        for (int i = 0; i < dailySummaries.size(); i++) {
+            @Override
+            public void onFailure(@NotNull Throwable t) {
+                Events.raiseError(engineName() + " - unable to store window digests", new Exception(t));
+            }
+        }, AppExecutors.getBackgroundExecutor());
+    }
 
+    private String digestKey(String digest) {
+        // v2 keys predate other engines and are left unprefixed so stored digests stay valid
+        return "v2".equals(engineName()) ? digest : engineName() + ":" + digest;
+    }
 
-            if (dailySummaries.get(i).getSummaryData().getMaximumScore() >= config.getMinimumRiskScoreFullRange()) {
-                valid.add(dailySummaries.get(i));
-            }
+    private void runShadow(List<DailySummary> dailySummaries, List<ExposureWindow> exposureWindows, ExposureEntity primary, Context context) {
+        try {
+            shadow.repository = repository;
+            shadow.configVersion = configVersion;
+            shadow.digests = digests;
+            shadow.batch = batch;
+            ExposureEntity result = shadow.buildExposureEntity(dailySummaries, exposureWindows, shadow.ensConfig);
+
+            String comparison = "primary: " + engineName() + " " + describe(primary) + ", shadow: " + shadow.engineName() + " " + describe(result);
+            boolean matches = describe(primary).equals(describe(result));
+            Events.raiseEvent(Events.INFO, "Shadow risk engine - matches: " + matches + ", " + comparison);
+            SharedPrefs.setString("lastShadowRisk", comparison + ", matches: " + matches + ", at: " + System.currentTimeMillis(), context);
+        } catch (Exception ex) {
+            // the shadow must never affect the primary result
+            Events.raiseError("Shadow risk engine failed", ex);
         }
+    }
 
-        if (valid.size() == 0) {
-            Events.raiseEvent(Events.INFO, "V2 - No valid daily summaries");
-            return null;
+    private static String describe(ExposureEntity entity) {
+        if (entity == null) {
+            return "{none}";
         }
+        return "{days: " + entity.daysSinceLastExposure() + ", maxScore: " + entity.maximumRiskScore()
+                + ", durations: " + entity.attenuationDurations() + "}";
+    }
 
-        long matchDay = valid.get(0).getDaysSinceEpoch();
-
-        List<WindowData> windowItems = extractExposureWindows(exposureWindows, matchDay, config);
-
-        if (config.getContiguousMode()) {
-            List<WindowData> exceeded = filterForExceededWindows(windowItems);
-            if (exceeded.size() > 0) {
-                long dayVal = TimeUnit.DAYS.convert(new Date(exceeded.get(0).getDate()).getTime(), TimeUnit.MILLISECONDS);
-
-                DailySummary day = findDay(valid, dayVal);
-                if (day != null) {
-                    return constructSummaryInfo(day, windowItems);
-                } else {
-                    Events.raiseEvent(Events.INFO, "V2 - Unable to find day to match window");
-                    return null;
-                }
-            } else {
-                Events.raiseEvent(Events.INFO, "V2 - Running in Contiguous mode, no contiguos match");
-                return null;
+    private Map<String, WindowDigestEntity> loadDigests(ListenableFuture<List<WindowDigestEntity>> digestsFuture) {
+        Map<String, WindowDigestEntity> byKey = new HashMap<>();
+        try {
+            // reading the digests is an optimisation, don't let it hold up or fail the check
+            for (WindowDigestEntity digest : digestsFuture.get(DIGEST_LOAD_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                byKey.put(digest.getDigest(), digest);
             }
-        } else {
-            return constructSummaryInfo(valid.get(0), windowItems);
+        } catch (Exception ex) {
+            Events.raiseError("V2 - unable to load window digests", ex);
         }
+        return byKey;
     }
 
     public ListenableFuture<ExposureEntity> processKeys(Context context, Boolean simulate, Integer simulateDays) {
-
-        return FluentFuture.from(TaskToFutureAdapter.getFutureWithTimeout(
-                    ExposureNotificationClientWrapper.get(context).getDailySummaries(this.ensConfig),
-                    DEFAULT_API_TIMEOUT.toMillis(),
-                    TimeUnit.MILLISECONDS,
-                    AppExecutors.getScheduledExecutor()))
-                .transformAsync(dailySummaries -> {
-                    return FluentFuture.from(TaskToFutureAdapter.getFutureWithTimeout(
-                        ExposureNotificationClientWrapper.get(context).getExposureWindows(),
-                        DEFAULT_API_TIMEOUT.toMillis(),
-                        TimeUnit.MILLISECONDS,
-                        AppExecutors.getScheduledExecutor()))
-                    .transformAsync(exposureWindows -> {
-                        if (simulate) {
-                            ExposureEntity exposureEntity = buildSimulatedExposureEntity(simulateDays);
-                            return Futures.immediateFuture(exposureEntity);
-                        }
-
-                        if (exposureWindows == null) {
-                            Events.raiseEvent(Events.INFO, "exposureWindows - no exposure windows.");
-                            return Futures.immediateFuture(null);
-                        }
-
-                        if (exposureWindows.size() == 0) {
-                            // No matches so we show no notification and just delete the token.
-                            Events.raiseEvent(Events.INFO, "exposureSummary - empty exposure windows.");
-                            return Futures.immediateFuture(null);
-                        }
-
-                        if (dailySummaries == null) {
-                            Events.raiseEvent(Events.INFO, "exposureWindows - no dailySummaries");
-                            return Futures.immediateFuture(null);
-                        }
-                        if (dailySummaries.size() == 0) {
-                            Events.raiseEvent(Events.INFO, "exposureWindows - empty dailySummaries");
-                            return Futures.immediateFuture(null);
-                        }
-
-                        ExposureEntity exposureEntity = buildExposureEntity(dailySummaries, exposureWindows, ensConfig);
-
+        ExposureNotificationClientWrapper client = ExposureNotificationClientWrapper.get(context);
+        repository = new ExposureNotificationRepository(context);
+        configVersion = ExposureConfigCache.getVersion(context);
+
+        // ENS only returns the last 14 days of windows, older digests can't match again
+        repository.deleteWindowDigestsBefore(System.currentTimeMillis() - DIGEST_RETENTION_MS);
+        ListenableFuture<List<WindowDigestEntity>> digestsFuture = repository.getAllWindowDigestsAsync();
+
+        // the two calls are independent, issue both and share one deadline
+        ListenableFuture<List<DailySummary>> dailySummariesFuture = TaskToFutureAdapter.getFuture(
+                "getDailySummaries",
+                client.getDailySummaries(this.ensConfig),
+                AppExecutors.getScheduledExecutor());
+        ListenableFuture<List<ExposureWindow>> exposureWindowsFuture = TaskToFutureAdapter.getFuture(
+                "getExposureWindows",
+                client.getExposureWindows(),
+                AppExecutors.getScheduledExecutor());
+
+        return FluentFuture.from(Futures.whenAllSucceed(dailySummariesFuture, exposureWindowsFuture)
+                .callAsync(() -> {
+                    List<DailySummary> dailySummaries = Futures.getDone(dailySummariesFuture);
+                    List<ExposureWindow> exposureWindows = Futures.getDone(exposureWindowsFuture);
+                    digests = loadDigests(digestsFuture);
+
+                    if (simulate) {
+                        ExposureEntity exposureEntity = buildSimulatedExposureEntity(simulateDays);
                         return Futures.immediateFuture(exposureEntity);
-                    }, AppExecutors.getBackgroundExecutor());
-                }, AppExecutors.getBackgroundExecutor());
+                    }
+
+                    if (exposureWindows == null) {
+                        Events.raiseEvent(Events.INFO, "exposureWindows - no exposure windows.");
+                        return Futures.immediateFuture(null);
+                    }
+
+                    if (exposureWindows.size() == 0) {
+                        // No matches so we show no notification and just delete the token.
+                        Events.raiseEvent(Events.INFO, "exposureSummary - empty exposure windows.");
+                        return Futures.immediateFuture(null);
+                    }
+
+                    if (dailySummaries == null) {
+                        Events.raiseEvent(Events.INFO, "exposureWindows - no dailySummaries");
+                        return Futures.immediateFuture(null);
+                    }
+                    if (dailySummaries.size() == 0) {
+                        Events.raiseEvent(Events.INFO, "exposureWindows - empty dailySummaries");
+                        return Futures.immediateFuture(null);
+                    }
+
+                    batch = new WindowDigests.Batch(exposureWindows);
+                    resultKey = engineName() + ":" + configVersion + "/" + WindowDigests.fingerprint(batch, dailySummaries);
+                    ExposureEntity exposureEntity = buildExposureEntity(dailySummaries, exposureWindows, ensConfig);
+                    if (shadow != null) {
+                        runShadow(dailySummaries, exposureWindows, exposureEntity, context);
+                    }
+                    persistDigests();
+                    if (shadow != null) {
+                        shadow.persistDigests();
+                    }
+
+                    return Futures.immediateFuture(exposureEntity);
+                }, AppExecutors.getBackgroundExecutor()))
+                .withTimeout(DEFAULT_API_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS, AppExecutors.getScheduledExecutor());
     }
 }
@@ -0,0 +1,22 @@
+package ie.gov.tracing.nearby.riskcalculation;
+
+import ie.gov.tracing.common.ExposureConfig;
+
+// V2 with the infectiousness and report type weights applied locally to every window
+// in the same pass as the bucket aggregation
+public class RiskCalculationV3 extends RiskCalculationV2 {
+
+    public RiskCalculationV3(ExposureConfig config) {
+        super(config);
+    }
+
+    @Override
+    protected String engineName() {
+        return "v3";
+    }
+
+    @Override
+    protected ScanAggregator createAggregator(ExposureConfig config) {
+        return new ScanAggregator(config, true);
+    }
+}
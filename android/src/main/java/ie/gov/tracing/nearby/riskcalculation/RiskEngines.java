@@ -0,0 +1,78 @@
+package ie.gov.tracing.nearby.riskcalculation;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import ie.gov.tracing.common.Events;
+import ie.gov.tracing.common.ExposureConfig;
+import ie.gov.tracing.storage.ExposureNotificationRepository;
+
+// risk calculations the server can select by name, riskEngineVersion is the minimum
+// version the config needs, older apps fall back to the v2Mode choice
+public final class RiskEngines {
+
+    interface Factory {
+        RiskCalculation create(ExposureConfig config, ExposureNotificationRepository repository, String token);
+    }
+
+    private static final class Engine {
+        final int version;
+        final Factory factory;
+
+        Engine(int version, Factory factory) {
+            this.version = version;
+            this.factory = factory;
+        }
+    }
+
+    private static final Map<String, Engine> engines = new HashMap<>();
+
+    static {
+        engines.put("v1", new Engine(1, (config, repository, token) -> new RiskCalculationV1(repository, token, config)));
+        engines.put("v2", new Engine(1, (config, repository, token) -> new RiskCalculationV2(config)));
+        engines.put("v3", new Engine(1, (config, repository, token) -> new RiskCalculationV3(config)));
+    }
+
+    private RiskEngines() {
+    }
+
+    public static String nameFor(ExposureConfig config) {
+        if (config == null) {
+            return "v1";
+        }
+        String fallback = config.getV2Mode() ? "v2" : "v1";
+        String name = config.getRiskEngine();
+        if (name == null || name.isEmpty()) {
+            return fallback;
+        }
+        Engine engine = engines.get(name);
+        if (engine == null || engine.version < config.getRiskEngineVersion()) {
+            Events.raiseEvent(Events.INFO, "Risk engine " + name + " v" + config.getRiskEngineVersion() + " not available, using " + fallback);
+            return fallback;
+        }
+        return name;
+    }
+
+    public static RiskCalculation select(ExposureConfig config, ExposureNotificationRepository repository, String token) {
+        String name = nameFor(config);
+        RiskCalculation risk = engines.get(name).factory.create(config, repository, token);
+
+        String shadowName = config != null ? config.getShadowRiskEngine() : null;
+        if (shadowName == null || shadowName.isEmpty() || shadowName.equals(name)) {
+            return risk;
+        }
+        Engine shadowEngine = engines.get(shadowName);
+        if (shadowEngine == null) {
+            Events.raiseEvent(Events.INFO, "Shadow risk engine " + shadowName + " not available");
+            return risk;
+        }
+        RiskCalculation shadow = shadowEngine.factory.create(config, repository, token);
+        // shadows reuse the primary's summaries and windows, so both need to be window based
+        if (!(risk instanceof RiskCalculationV2) || !(shadow instanceof RiskCalculationV2)) {
+            Events.raiseEvent(Events.INFO, "Shadow risk engine " + shadowName + " needs window based engines, primary: " + name);
+            return risk;
+        }
+        ((RiskCalculationV2) risk).setShadow((RiskCalculationV2) shadow);
+        return risk;
+    }
+}
@@ -0,0 +1,160 @@
+package ie.gov.tracing.nearby.riskcalculation;
+
+import com.google.android.gms.nearby.exposurenotification.ExposureWindow;
+import com.google.android.gms.nearby.exposurenotification.ScanInstance;
+
+import java.util.Arrays;
+import java.util.List;
+
+import ie.gov.tracing.common.ExposureConfig;
+
+// aggregates the scan instances of every window into flat primitive arrays in one pass,
+// row w of buckets/weightedBuckets holds the BUCKETS values for window w
+final class ScanAggregator {
+    static final int BUCKETS = 4;
+
+    private final AttenuationTable attenuationTable;
+    private final double[] weightings;
+    private final int timeThreshold;
+    // indexed by Infectiousness / ReportType value, null when windows aren't weighted
+    private final double[] infectiousnessWeights;
+    private final double[] reportTypeWeights;
+
+    ScanAggregator(ExposureConfig config) {
+        this(config, false);
+    }
+
+    ScanAggregator(ExposureConfig config, boolean weightWindows) {
+        attenuationTable = AttenuationTable.forConfig(config);
+        weightings = new double[]{config.getImmediateDurationWeight(), config.getNearDurationWeight(), config.getMediumDurationWeight(), config.getOtherDurationWeight()};
+        timeThreshold = config.getTimeThreshold();
+
+        if (weightWindows) {
+            // NONE and REVOKED never count, anything ENS adds later is left unweighted
+            infectiousnessWeights = new double[]{0, percent(config.getInfectiousnessStandardWeight()), percent(config.getInfectiousnessHighWeight())};
+            reportTypeWeights = new double[]{1, percent(config.getReportTypeConfirmedTestWeight()), percent(config.getReportTypeConfirmedClinicalDiagnosisWeight()),
+                    percent(config.getReportTypeSelfReportedWeight()), percent(config.getReportTypeRecursiveWeight()), 0};
+        } else {
+            infectiousnessWeights = null;
+            reportTypeWeights = null;
+        }
+    }
+
+    private static double percent(Double weight) {
+        return weight == null ? 1.0 : weight / 100.0;
+    }
+
+    private static double lookup(double[] weights, int value) {
+        return value >= 0 && value < weights.length ? weights[value] : 1.0;
+    }
+
+    // unmatched attenuations fall into the last bucket
+    static int bucketOf(int[] thresholds, int attenuation) {
+        for (int i = 0; i < thresholds.length; i++) {
+            if (attenuation <= thresholds[i]) {
+                return i;
+            }
+        }
+        return BUCKETS - 1;
+    }
+
+    // scores one window whose scans were already assigned to buckets, so the assignment can be
+    // shared by every config with the same thresholds, weightedBuckets is overwritten
+    boolean score(int[] minutes, int[] scanBuckets, int infectiousness, int reportType, int[] weightedBuckets) {
+        Arrays.fill(weightedBuckets, 0);
+        return score(minutes, scanBuckets, minutes.length, infectiousness, reportType, weightedBuckets, 0);
+    }
+
+    // the one scoring kernel, writes the first scanCount scans into weightedBuckets[base..base + BUCKETS)
+    private boolean score(int[] minutes, int[] scanBuckets, int scanCount, int infectiousness, int reportType,
+                          int[] weightedBuckets, int base) {
+        boolean weighted = infectiousnessWeights != null;
+        double windowWeight = weighted ? lookup(infectiousnessWeights, infectiousness) * lookup(reportTypeWeights, reportType) : 1.0;
+
+        for (int s = 0; s < scanCount; s++) {
+            int bucket = base + scanBuckets[s];
+            // matches the previous int += double, the weighted total truncates after every scan
+            double increment = minutes[s] * weightings[scanBuckets[s]] / 100.0;
+            if (weighted) {
+                increment *= windowWeight;
+            }
+            weightedBuckets[bucket] = (int) (weightedBuckets[bucket] + increment);
+        }
+
+        int totalTime = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            totalTime += weightedBuckets[base + i];
+        }
+        return totalTime >= timeThreshold;
+    }
+
+    static final class Result {
+        final int count;
+        final int[] buckets;
+        final int[] weightedBuckets;
+        final int[] numScans;
+        final boolean[] exceedsThresholds;
+
+        Result(int count) {
+            this.count = count;
+            buckets = new int[count * BUCKETS];
+            weightedBuckets = new int[count * BUCKETS];
+            numScans = new int[count];
+            exceedsThresholds = new boolean[count];
+        }
+
+        ScanData toScanData(int window) {
+            int base = window * BUCKETS;
+            int[] rawRow = new int[BUCKETS];
+            int[] weightedRow = new int[BUCKETS];
+            System.arraycopy(buckets, base, rawRow, 0, BUCKETS);
+            System.arraycopy(weightedBuckets, base, weightedRow, 0, BUCKETS);
+            return new ScanData(rawRow, weightedRow, exceedsThresholds[window], numScans[window]);
+        }
+    }
+
+    Result aggregate(List<ExposureWindow> windows) {
+        return aggregate(windows, null);
+    }
+
+    // rows with a non null entry in known are copied from it instead of being scored again
+    Result aggregate(List<ExposureWindow> windows, ScanData[] known) {
+        Result result = new Result(windows.size());
+        int[] buckets = result.buckets;
+        int[] weightedBuckets = result.weightedBuckets;
+        // scratch rows reused across windows, only grown for a window with more scans
+        int[] minutes = new int[0];
+        int[] scanBuckets = new int[0];
+
+        for (int w = 0; w < result.count; w++) {
+            if (known != null && known[w] != null) {
+                System.arraycopy(known[w].getBuckets(), 0, buckets, w * BUCKETS, BUCKETS);
+                System.arraycopy(known[w].getWeightedBuckets(), 0, weightedBuckets, w * BUCKETS, BUCKETS);
+                result.numScans[w] = known[w].getNumScans();
+                result.exceedsThresholds[w] = known[w].getExceedsThresholds();
+                continue;
+            }
+
+            ExposureWindow window = windows.get(w);
+            List<ScanInstance> scans = window.getScanInstances();
+            int base = w * BUCKETS;
+            int scanCount = scans.size();
+            if (scanCount > minutes.length) {
+                minutes = new int[scanCount];
+                scanBuckets = new int[scanCount];
+            }
+
+            for (int s = 0; s < scanCount; s++) {
+                ScanInstance scan = scans.get(s);
+                minutes[s] = scan.getSecondsSinceLastScan() / 60;
+                scanBuckets[s] = attenuationTable.bucketOf(scan.getTypicalAttenuationDb());
+                buckets[base + scanBuckets[s]] += minutes[s];
+            }
+
+            result.numScans[w] = scanCount;
+            result.exceedsThresholds[w] = score(minutes, scanBuckets, scanCount, window.getInfectiousness(), window.getReportType(),
+                    weightedBuckets, base);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,99 @@
+package ie.gov.tracing.nearby.riskcalculation;
+
+import com.google.android.gms.nearby.exposurenotification.DailySummary;
+import com.google.android.gms.nearby.exposurenotification.ExposureWindow;
+import com.google.android.gms.nearby.exposurenotification.ScanInstance;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// identifies an exposure window across broadcasts, ENS returns the same windows for 14 days
+final class WindowDigests {
+    static final int VALUES_PER_SCAN = 3;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private WindowDigests() {
+    }
+
+    static int[] pack(List<ScanInstance> scans) {
+        int[] packed = new int[scans.size() * VALUES_PER_SCAN];
+        for (int i = 0; i < scans.size(); i++) {
+            ScanInstance scan = scans.get(i);
+            packed[i * VALUES_PER_SCAN] = scan.getTypicalAttenuationDb();
+            packed[i * VALUES_PER_SCAN + 1] = scan.getMinAttenuationDb();
+            packed[i * VALUES_PER_SCAN + 2] = scan.getSecondsSinceLastScan();
+        }
+        return packed;
+    }
+
+    static String digestOf(ExposureWindow window, int[] packedScans) {
+        long hash = FNV_OFFSET;
+        hash = mix(hash, window.getDateMillisSinceEpoch());
+        hash = mix(hash, window.getCalibrationConfidence());
+        hash = mix(hash, window.getReportType());
+        hash = mix(hash, window.getInfectiousness());
+        hash = mix(hash, packedScans.length);
+        for (int value : packedScans) {
+            hash = mix(hash, value);
+        }
+        // date prefix keeps digests of different days apart even on a hash collision
+        return window.getDateMillisSinceEpoch() + ":" + Long.toHexString(hash);
+    }
+
+    // the packed scans and digest of every window a broadcast returned, computed once and shared
+    // by the fingerprint, each engine's scoring and the digest writes, rows follow windows
+    static final class Batch {
+        final List<ExposureWindow> windows;
+        final int[][] packed;
+        final String[] digests;
+
+        Batch(List<ExposureWindow> windows) {
+            this.windows = windows;
+            packed = new int[windows.size()][];
+            digests = new String[windows.size()];
+            for (int i = 0; i < windows.size(); i++) {
+                ExposureWindow window = windows.get(i);
+                packed[i] = pack(window.getScanInstances());
+                digests[i] = digestOf(window, packed[i]);
+            }
+        }
+    }
+
+    // independent of the order ENS returns windows and summaries in
+    static String fingerprint(Batch batch, List<DailySummary> dailySummaries) {
+        List<ExposureWindow> windows = batch.windows;
+        List<String> parts = new ArrayList<>(windows.size() + dailySummaries.size());
+        Collections.addAll(parts, batch.digests);
+        for (DailySummary summary : dailySummaries) {
+            DailySummary.ExposureSummaryData data = summary.getSummaryData();
+            parts.add("d" + summary.getDaysSinceEpoch() + ":" + data.getMaximumScore() + ":" + data.getScoreSum() + ":" + data.getWeightedDurationSum());
+        }
+        Collections.sort(parts);
+
+        long hash = FNV_OFFSET;
+        for (String part : parts) {
+            for (int i = 0; i < part.length(); i++) {
+                hash = mix(hash, part.charAt(i));
+            }
+        }
+        return windows.size() + ":" + dailySummaries.size() + ":" + Long.toHexString(hash);
+    }
+
+    // digests stored by engines other than v2 carry an "engine:" prefix
+    static String withoutEngine(String key) {
+        int last = key.lastIndexOf(':');
+        int previous = last > 0 ? key.lastIndexOf(':', last - 1) : -1;
+        return previous < 0 ? key : key.substring(previous + 1);
+    }
+
+    private static long mix(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash ^= (value >>> (i * 8)) & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,181 @@
+package ie.gov.tracing.nearby.riskcalculation;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ie.gov.tracing.common.ExposureConfig;
+import ie.gov.tracing.storage.WindowDigestEntity;
+
+// re-scores the windows stored in the digest table against candidate configs, configs sharing
+// attenuation thresholds share the per scan bucket assignment and each threshold group runs
+// on its own thread
+public final class WindowReplay {
+
+    public static final class Summary {
+        public final int configIndex;
+        public final String engine;
+        public final int windows;
+        public final int exceeding;
+        // windows whose classification differs from the one stored with them
+        public final int changed;
+        public final int exceedingDays;
+        public final long latestExceedingDate;
+
+        Summary(int configIndex, String engine, int windows, int exceeding, int changed, int exceedingDays, long latestExceedingDate) {
+            this.configIndex = configIndex;
+            this.engine = engine;
+            this.windows = windows;
+            this.exceeding = exceeding;
+            this.changed = changed;
+            this.exceedingDays = exceedingDays;
+            this.latestExceedingDate = latestExceedingDate;
+        }
+    }
+
+    // scans decoded once and shared by every config
+    private static final class Windows {
+        final int count;
+        final long[] dates;
+        final int[] infectiousness;
+        final int[] reportTypes;
+        final boolean[] storedExceeds;
+        final int[][] attenuations;
+        final int[][] minutes;
+
+        Windows(List<WindowDigestEntity> digests) {
+            // the same window can be stored by more than one engine, v2 rows come first
+            Map<String, WindowDigestEntity> unique = new LinkedHashMap<>();
+            for (WindowDigestEntity digest : digests) {
+                String key = WindowDigests.withoutEngine(digest.getDigest());
+                WindowDigestEntity existing = unique.get(key);
+                if (existing == null || existing.getDigest().length() > digest.getDigest().length()) {
+                    unique.put(key, digest);
+                }
+            }
+
+            count = unique.size();
+            dates = new long[count];
+            infectiousness = new int[count];
+            reportTypes = new int[count];
+            storedExceeds = new boolean[count];
+            attenuations = new int[count][];
+            minutes = new int[count][];
+
+            int w = 0;
+            for (WindowDigestEntity digest : unique.values()) {
+                int[] packed = digest.getScans();
+                int scans = packed.length / WindowDigests.VALUES_PER_SCAN;
+                dates[w] = digest.getDateMs();
+                infectiousness[w] = digest.getInfectiousness();
+                reportTypes[w] = digest.getReportType();
+                storedExceeds[w] = digest.getExceedsThresholds();
+                attenuations[w] = new int[scans];
+                minutes[w] = new int[scans];
+                for (int s = 0; s < scans; s++) {
+                    attenuations[w][s] = packed[s * WindowDigests.VALUES_PER_SCAN];
+                    minutes[w][s] = packed[s * WindowDigests.VALUES_PER_SCAN + 2] / 60;
+                }
+                w++;
+            }
+        }
+    }
+
+    private WindowReplay() {
+    }
+
+    public static ListenableFuture<List<Summary>> replay(List<WindowDigestEntity> digests, List<ExposureConfig> configs, ListeningExecutorService executor) {
+        Windows windows = new Windows(digests);
+
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < configs.size(); i++) {
+            String thresholds = Arrays.toString(configs.get(i).getAttenuationDurationThresholds());
+            List<Integer> group = groups.get(thresholds);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(thresholds, group);
+            }
+            group.add(i);
+        }
+
+        List<ListenableFuture<List<Summary>>> futures = new ArrayList<>();
+        for (List<Integer> group : groups.values()) {
+            futures.add(executor.submit(() -> replayGroup(windows, configs, group)));
+        }
+
+        return Futures.transform(Futures.allAsList(futures), results -> {
+            Summary[] ordered = new Summary[configs.size()];
+            for (List<Summary> result : results) {
+                for (Summary summary : result) {
+                    ordered[summary.configIndex] = summary;
+                }
+            }
+            return Arrays.asList(ordered);
+        }, executor);
+    }
+
+    private static List<Summary> replayGroup(Windows windows, List<ExposureConfig> configs, List<Integer> group) {
+        AttenuationTable attenuationTable = new AttenuationTable(configs.get(group.get(0)).getAttenuationDurationThresholds());
+        int[][] scanBuckets = new int[windows.count][];
+        for (int w = 0; w < windows.count; w++) {
+            int[] attenuations = windows.attenuations[w];
+            scanBuckets[w] = new int[attenuations.length];
+            for (int s = 0; s < attenuations.length; s++) {
+                scanBuckets[w][s] = attenuationTable.bucketOf(attenuations[s]);
+            }
+        }
+
+        List<Summary> summaries = new ArrayList<>(group.size());
+        int[] weightedBuckets = new int[ScanAggregator.BUCKETS];
+        for (int index : group) {
+            ExposureConfig config = configs.get(index);
+            String engine = RiskEngines.nameFor(config);
+            ScanAggregator aggregator = new ScanAggregator(config, "v3".equals(engine));
+
+            int exceeding = 0;
+            int changed = 0;
+            long latest = -1;
+            Set<Long> days = new HashSet<>();
+            for (int w = 0; w < windows.count; w++) {
+                boolean exceeds = aggregator.score(windows.minutes[w], scanBuckets[w], windows.infectiousness[w], windows.reportTypes[w], weightedBuckets);
+                if (exceeds != windows.storedExceeds[w]) {
+                    changed++;
+                }
+                if (exceeds) {
+                    exceeding++;
+                    days.add(DayIndex.dayOf(windows.dates[w]));
+                    latest = Math.max(latest, windows.dates[w]);
+                }
+            }
+            summaries.add(new Summary(index, engine, windows.count, exceeding, changed, days.size(), latest));
+        }
+        return summaries;
+    }
+
+    public static WritableArray toArray(List<Summary> summaries) {
+        WritableArray array = Arguments.createArray();
+        for (Summary summary : summaries) {
+            WritableMap map = Arguments.createMap();
+            map.putInt("config", summary.configIndex);
+            map.putString("engine", summary.engine);
+            map.putInt("windows", summary.windows);
+            map.putInt("exceeding", summary.exceeding);
+            map.putInt("changed", summary.changed);
+            map.putInt("exceedingDays", summary.exceedingDays);
+            map.putDouble("latestExceedingDate", summary.latestExceedingDate);
+            array.pushMap(map);
+        }
+        return array;
+    }
+}
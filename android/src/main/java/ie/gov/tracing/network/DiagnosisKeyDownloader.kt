@@ -16,6 +16,13 @@ import kotlin.math.min
 @Keep
 data class ServerFile(val id: Long, val path: String)
 
+// a downloaded export and the server index it advances "since" to once submitted,
+// summary is null when the export could not be read locally
+data class ExportFile(val id: Long, val file: File, val summary: ExportSummary?) {
+    val keyCount: Int
+        get() = summary?.totalKeys ?: -1
+}
+
 internal class DiagnosisKeyDownloader(private val context: Context) {
     private fun processGoogleList(fileList: List<String>, fileLimit: Int): Array<ServerFile> {
         var since = SharedPrefs.getLong("since", context)
@@ -44,7 +51,7 @@ internal class DiagnosisKeyDownloader(private val context: Context) {
         }
     }
 
-    fun download(fileLimit: Int): ListenableFuture<List<File>> {
+    fun download(fileLimit: Int): ListenableFuture<List<ExportFile>> {
         ProvideDiagnosisKeysWorker.nextSince = 0 // this will be greater than 0 on success
         var since = SharedPrefs.getLong("since", context)
         val keyServerType = SharedPrefs.getString("keyServerType", context)
@@ -63,7 +70,10 @@ internal class DiagnosisKeyDownloader(private val context: Context) {
         } 
         val data = Fetcher.fetchKeyFile(endpoint, context)
 
-        val files = mutableListOf<File>()
+        val files = mutableListOf<ExportFile>()
+        var skipped = 0
+        var keys = 0L
+        var bytes = 0L
         if(data != null) {
             var serverFiles: Array<ServerFile>
             if (keyServerType == "google") {
@@ -79,7 +89,18 @@ internal class DiagnosisKeyDownloader(private val context: Context) {
                     Events.raiseEvent(Events.INFO, "download - downloading file: ${serverFile}")
                     val file = Fetcher.downloadFile(serverFile.path, context)
                     if (file != null) {
-                        files.add(file)
+                        val summary = readSummary(file)
+                        val keyCount = summary?.totalKeys ?: -1
+                        if (keyCount == 0) {
+                            // nothing for ENS to match, don't spend quota on it
+                            Events.raiseEvent(Events.INFO, "download - skipping empty export: ${serverFile.path}")
+                            file.delete()
+                            skipped++
+                        } else {
+                            files.add(ExportFile(serverFile.id, file, summary))
+                            keys += keyCount.coerceAtLeast(0)
+                            bytes += file.length()
+                        }
                         // update max since
                         since = since.coerceAtLeast(serverFile.id)
                     }
@@ -87,12 +108,23 @@ internal class DiagnosisKeyDownloader(private val context: Context) {
                     Events.raiseError("download - Error downloading file: ${serverFile.path}", ex)
                 }
             }
-            if (files.size > 0) {
+            if (files.size > 0 || skipped > 0) {
                 Events.raiseEvent(Events.INFO, "success downloading incrementing since to: $since")
                 ProvideDiagnosisKeysWorker.nextSince = since
             }
+            SharedPrefs.setString("lastExportStats", "files: ${files.size}, skipped: $skipped, keys: $keys, bytes: $bytes", context)
         }
 
         return Futures.immediateFuture(files)
     }
+
+    // null when the export can't be read, ENS still gets the file and does its own validation
+    private fun readSummary(file: File): ExportSummary? {
+        return try {
+            ExportFileReader.read(file)
+        } catch (ex: Exception) {
+            Events.raiseError("download - unable to read export: ${file.name}", ex)
+            null
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,74 @@
+package ie.gov.tracing.network
+
+import com.google.common.hash.Hashing
+import com.google.common.io.Files
+import ie.gov.tracing.common.Events
+import java.io.File
+
+// export.bin is covered by the signature in export.sig so keys can't be merged into locally
+// built files, instead drop re-published duplicates and keep multi-batch sets together so the
+// submitter packs them into as few provideDiagnosisKeys calls as possible
+object ExportCoalescer {
+    // returns groups in server index order, each group must be submitted in the same call
+    @JvmStatic
+    fun group(files: List<ExportFile>): List<List<ExportFile>> {
+        val sorted = files.sortedBy { it.id }
+        val seen = HashMap<String, ExportFile>()
+        val groups = mutableListOf<MutableList<ExportFile>>()
+        var duplicates = 0
+
+        sorted.forEach { file ->
+            val summary = file.summary
+            if (summary == null) {
+                groups.add(mutableListOf(file))
+                return@forEach
+            }
+
+            // matching headers only make a candidate, the bytes decide, anything we can't
+            // prove is a copy is kept as the since index moves past it either way
+            val identity = identity(summary)
+            val first = seen[identity]
+            if (first == null) {
+                seen[identity] = file
+            } else if (sameContent(first.file, file.file)) {
+                Events.raiseEvent(Events.INFO, "coalesce - dropping duplicate export: ${file.file.name}")
+                file.file.delete()
+                duplicates++
+                return@forEach
+            } else {
+                Events.raiseEvent(Events.INFO, "coalesce - ${file.file.name} has the same header as ${first.file.name} but different content, keeping both")
+            }
+
+            val last = groups.lastOrNull()?.last()?.summary
+            if (last != null && summary.batchSize > 1 && sameBatchSet(last, summary)) {
+                groups.last().add(file)
+            } else {
+                groups.add(mutableListOf(file))
+            }
+        }
+
+        Events.raiseEvent(Events.INFO, "coalesce - files: ${files.size}, groups: ${groups.size}, duplicates: $duplicates")
+        return groups
+    }
+
+    private fun sameBatchSet(a: ExportSummary, b: ExportSummary): Boolean {
+        return a.region == b.region && a.startTimestamp == b.startTimestamp &&
+                a.endTimestamp == b.endTimestamp && a.batchSize == b.batchSize
+    }
+
+    // only hashed on a header collision, which is rare
+    private fun sameContent(a: File, b: File): Boolean {
+        return try {
+            a.length() == b.length() &&
+                    Files.asByteSource(a).hash(Hashing.sha256()) == Files.asByteSource(b).hash(Hashing.sha256())
+        } catch (ex: Exception) {
+            Events.raiseError("coalesce - unable to compare ${a.name} and ${b.name}", ex)
+            false
+        }
+    }
+
+    private fun identity(summary: ExportSummary): String {
+        return "${summary.region}:${summary.startTimestamp}:${summary.endTimestamp}:" +
+                "${summary.batchNum}/${summary.batchSize}:${summary.keyCount}:${summary.revisedKeyCount}"
+    }
+}
@@ -0,0 +1,174 @@
+package ie.gov.tracing.network
+
+import androidx.annotation.Keep
+import com.google.common.io.CountingInputStream
+import java.io.BufferedInputStream
+import java.io.EOFException
+import java.io.File
+import java.io.IOException
+import java.io.InputStream
+import java.util.zip.ZipFile
+
+@Keep
+data class ExportSummary(
+        val keyCount: Int,
+        val revisedKeyCount: Int,
+        val startTimestamp: Long,
+        val endTimestamp: Long,
+        val region: String,
+        val batchNum: Int,
+        val batchSize: Int
+) {
+    val totalKeys: Int
+        get() = keyCount + revisedKeyCount
+}
+
+// the export doesn't follow the TemporaryExposureKeyExport layout
+class ExportParseException(message: String) : IOException(message)
+
+// reads the TemporaryExposureKeyExport header fields and counts keys straight from the zip
+// entry stream, key messages themselves are skipped without being decoded
+object ExportFileReader {
+    private const val EXPORT_ENTRY = "export.bin"
+    private const val HEADER = "EK Export v1    "
+    // region is a country code in practice, anything longer is corrupt
+    private const val MAX_REGION_BYTES = 256
+
+    private const val FIELD_START_TIMESTAMP = 1
+    private const val FIELD_END_TIMESTAMP = 2
+    private const val FIELD_REGION = 3
+    private const val FIELD_BATCH_NUM = 4
+    private const val FIELD_BATCH_SIZE = 5
+    private const val FIELD_KEYS = 7
+    private const val FIELD_REVISED_KEYS = 8
+
+    private const val WIRE_VARINT = 0
+    private const val WIRE_FIXED64 = 1
+    private const val WIRE_LENGTH_DELIMITED = 2
+    private const val WIRE_FIXED32 = 5
+
+    @JvmStatic
+    fun read(file: File): ExportSummary {
+        ZipFile(file).use { zip ->
+            val entry = zip.getEntry(EXPORT_ENTRY) ?: throw IOException("$EXPORT_ENTRY not found in ${file.name}")
+            BufferedInputStream(zip.getInputStream(entry), 8192).use { return read(it, entry.size) }
+        }
+    }
+
+    // size is the length of the export.bin stream when known, -1 otherwise
+    @JvmStatic
+    @JvmOverloads
+    fun read(stream: InputStream, size: Long = -1): ExportSummary {
+        val input = CountingInputStream(stream)
+        val header = ByteArray(HEADER.length)
+        readFully(input, header)
+        if (String(header, Charsets.US_ASCII) != HEADER) throw ExportParseException("invalid export header")
+
+        var keyCount = 0
+        var revisedKeyCount = 0
+        var start = 0L
+        var end = 0L
+        var region = ""
+        var batchNum = 0
+        var batchSize = 0
+
+        while (true) {
+            val tag = readVarint(input, true)
+            if (tag < 0) break
+            val field = (tag ushr 3).toInt()
+            val wireType = (tag and 7).toInt()
+
+            when {
+                field == FIELD_START_TIMESTAMP && wireType == WIRE_FIXED64 -> start = readFixed64(input)
+                field == FIELD_END_TIMESTAMP && wireType == WIRE_FIXED64 -> end = readFixed64(input)
+                field == FIELD_REGION && wireType == WIRE_LENGTH_DELIMITED -> {
+                    val bytes = ByteArray(readLength(input, size, MAX_REGION_BYTES.toLong()).toInt())
+                    readFully(input, bytes)
+                    region = String(bytes, Charsets.UTF_8)
+                }
+                field == FIELD_BATCH_NUM && wireType == WIRE_VARINT -> batchNum = readVarint(input, false).toInt()
+                field == FIELD_BATCH_SIZE && wireType == WIRE_VARINT -> batchSize = readVarint(input, false).toInt()
+                field == FIELD_KEYS && wireType == WIRE_LENGTH_DELIMITED -> {
+                    keyCount++
+                    skip(input, readLength(input, size, Long.MAX_VALUE))
+                }
+                field == FIELD_REVISED_KEYS && wireType == WIRE_LENGTH_DELIMITED -> {
+                    revisedKeyCount++
+                    skip(input, readLength(input, size, Long.MAX_VALUE))
+                }
+                else -> skipField(input, wireType, size)
+            }
+        }
+
+        return ExportSummary(keyCount, revisedKeyCount, start, end, region, batchNum, batchSize)
+    }
+
+    private fun skipField(input: CountingInputStream, wireType: Int, size: Long) {
+        when (wireType) {
+            WIRE_VARINT -> readVarint(input, false)
+            WIRE_FIXED64 -> skip(input, 8)
+            WIRE_LENGTH_DELIMITED -> skip(input, readLength(input, size, Long.MAX_VALUE))
+            WIRE_FIXED32 -> skip(input, 4)
+            else -> throw ExportParseException("unsupported wire type $wireType")
+        }
+    }
+
+    // checked before anything is allocated or skipped, a corrupt length must not exhaust memory
+    private fun readLength(input: CountingInputStream, size: Long, max: Long): Long {
+        val length = readVarint(input, false)
+        if (length < 0 || length > max) throw ExportParseException("invalid field length $length")
+        if (size >= 0 && length > size - input.count) {
+            throw ExportParseException("field length $length exceeds the ${size - input.count} bytes remaining")
+        }
+        return length
+    }
+
+    // returns -1 at a clean end of stream when allowEof is set
+    private fun readVarint(input: InputStream, allowEof: Boolean): Long {
+        var result = 0L
+        var shift = 0
+        while (shift < 64) {
+            val b = input.read()
+            if (b < 0) {
+                if (allowEof && shift == 0) return -1
+                throw EOFException("truncated varint")
+            }
+            result = result or ((b and 0x7f).toLong() shl shift)
+            if (b and 0x80 == 0) return result
+            shift += 7
+        }
+        throw ExportParseException("malformed varint")
+    }
+
+    private fun readFixed64(input: InputStream): Long {
+        var result = 0L
+        for (i in 0 until 8) {
+            val b = input.read()
+            if (b < 0) throw EOFException("truncated fixed64")
+            result = result or (b.toLong() shl (8 * i))
+        }
+        return result
+    }
+
+    private fun readFully(input: InputStream, buffer: ByteArray) {
+        var offset = 0
+        while (offset < buffer.size) {
+            val read = input.read(buffer, offset, buffer.size - offset)
+            if (read < 0) throw EOFException("truncated export")
+            offset += read
+        }
+    }
+
+    private fun skip(input: InputStream, count: Long) {
+        var remaining = count
+        while (remaining > 0) {
+            val skipped = input.skip(remaining)
+            if (skipped <= 0) {
+                if (input.read() < 0) throw EOFException("truncated export")
+                remaining--
+            } else {
+                remaining -= skipped
+            }
+        }
+    }
+}
@@ -13,13 +13,13 @@ import ie.gov.tracing.storage.ExposureEntity
 import ie.gov.tracing.storage.SharedPrefs
 import io.reactivex.Single
 import io.reactivex.android.schedulers.AndroidSchedulers
-import io.reactivex.schedulers.Schedulers
 import okhttp3.*
 import okhttp3.RequestBody.Companion.toRequestBody
 import okhttp3.logging.HttpLoggingInterceptor
 import org.apache.commons.io.FileUtils
 import java.io.BufferedInputStream
 import java.io.File
+import java.io.IOException
 import java.io.InputStream
 import java.net.URL
 import java.security.KeyStore
@@ -64,8 +64,13 @@ data class PublishG(val hmacKey: String, val healthAuthorityID: String, val veri
 @Keep
 data class VersionData(val version: String, val os: String)
 
+@Keep
+data class ConditionalResponse(val body: String?, val etag: String?, val notModified: Boolean)
+
 private const val FILE_PATTERN = "/diag_keys/diagnosis_key_file_%s.zip"
 private const val REFRESH = "/refresh"
+private const val DOWNLOAD_BUFFER_SIZE = 8192
+private const val DOWNLOAD_GRACE_PERIOD_MS = 5000L
 
 object Fetcher {
 
@@ -135,7 +140,7 @@ object Fetcher {
             var pin = true
             var authenticate = true
 
-            val client = getOkClient(pin, authenticate, context)
+            val client = getOkClient(pin, authenticate, context, RequestClass.AUTH)
             val data = VersionData(Tracing.version(context).getString("display").toString(), "android")
             val request = Request.Builder()
                     .url(url)
@@ -164,7 +169,7 @@ object Fetcher {
         return null
     }
 
-    fun getOkClient(pin: Boolean = true, authenticate: Boolean = true, context: Context): OkHttpClient {
+    fun getOkClient(pin: Boolean = true, authenticate: Boolean = true, context: Context, requestClass: RequestClass): OkHttpClient {
 
         val authorizationInterceptor = getAuthorizationInterceptor(context)
         val bearerAuthenticator = getBearerAuthenticator(context)
@@ -210,8 +215,11 @@ object Fetcher {
             sslContext.init(null, arrayOf<TrustManager?>(trustManager), null)
             builder.sslSocketFactory(sslContext.getSocketFactory(), trustManager)
         }
-        builder.readTimeout(60, TimeUnit.SECONDS)
-        builder.connectTimeout(60, TimeUnit.SECONDS)
+        val timeouts = TimeoutProfiles.get(requestClass, context)
+        builder.connectTimeout(timeouts.connect, TimeUnit.SECONDS)
+        builder.readTimeout(timeouts.read, TimeUnit.SECONDS)
+        builder.writeTimeout(timeouts.write, TimeUnit.SECONDS)
+        builder.callTimeout(timeouts.call, TimeUnit.SECONDS)
         val okHttpClient: OkHttpClient = builder.build()
         return okHttpClient
     }
@@ -243,29 +251,32 @@ object Fetcher {
 
             Events.raiseEvent(Events.INFO, "downloadFile - $url")
 
-            val client = Fetcher.getOkClient(pin, authenticate, context)
+            val client = Fetcher.getOkClient(pin, authenticate, context, RequestClass.EXPORT)
             val request = Request.Builder()
                     .url(url)
                     .addHeader("Accept", "application/zip")
                     .get()
                     .build()
 
-            client.newCall(request).execute().use { response ->
-                if (response.isSuccessful) {
-                    Events.raiseEvent(Events.INFO, "downloadFile - success: ${response.code}")
-                    val keyFile = File(context.filesDir, String.format(FILE_PATTERN, uniq()))
-                    if (response.body == null) {
+            RequestScheduler.execute(RequestClass.EXPORT) {
+                client.newCall(request).execute().use { response ->
+                    if (response.isSuccessful) {
+                        Events.raiseEvent(Events.INFO, "downloadFile - success: ${response.code}")
+                        val keyFile = File(context.filesDir, String.format(FILE_PATTERN, uniq()))
+                        if (response.body == null) {
+                            return null
+                        }
+                        val minBytesPerSecond = TimeoutProfiles.get(RequestClass.EXPORT, context).minBytesPerSecond
+                        copyWithThroughputWatchdog(response.body!!.byteStream(), keyFile, minBytesPerSecond)
+                        Events.raiseEvent(Events.INFO, "downloadFile save - success: $url")
+                        return keyFile
+
+                    } else {
+                        Events.raiseEvent(Events.ERROR, "fetch - HTTP error: ${response.code}")
                         return null
                     }
-                    FileUtils.copyInputStreamToFile(response.body?.byteStream(), keyFile)
-                    Events.raiseEvent(Events.INFO, "downloadFile save - success: $url")
-                    return keyFile
 
-                } else {
-                    Events.raiseEvent(Events.ERROR, "fetch - HTTP error: ${response.code}")
-                    return null
                 }
-
             }
 
         } catch (ex: Exception) {
@@ -275,6 +286,34 @@ object Fetcher {
 
     }
 
+    // aborts a download that stays below minBytesPerSecond once the grace period has passed,
+    // a stalled export should not hold the worker until the call timeout fires
+    private fun copyWithThroughputWatchdog(input: InputStream, file: File, minBytesPerSecond: Long) {
+        val started = System.currentTimeMillis()
+        var total = 0L
+        try {
+            FileUtils.openOutputStream(file).use { output ->
+                input.use {
+                    val buffer = ByteArray(DOWNLOAD_BUFFER_SIZE)
+                    var read = it.read(buffer)
+                    while (read != -1) {
+                        output.write(buffer, 0, read)
+                        total += read
+
+                        val elapsed = System.currentTimeMillis() - started
+                        if (minBytesPerSecond > 0 && elapsed > DOWNLOAD_GRACE_PERIOD_MS && total * 1000 / elapsed < minBytesPerSecond) {
+                            throw IOException("download below minimum throughput: $total bytes in $elapsed ms")
+                        }
+                        read = it.read(buffer)
+                    }
+                }
+            }
+        } catch (ex: IOException) {
+            FileUtils.deleteQuietly(file)
+            throw ex
+        }
+    }
+
     private fun getRefreshToken(context: Context): String {
         var token = SharedPrefs.getString("refreshToken", context)
         if (token.isEmpty()) {
@@ -317,18 +356,18 @@ object Fetcher {
     }
 
     @JvmStatic
-    fun post(endpoint: String, body: String, context: Context): Boolean {
+    fun post(endpoint: String, body: String, context: Context, requestClass: RequestClass, idempotencyKey: String? = null): Boolean {
         val serverUrl = SharedPrefs.getString("serverUrl", context)
 
-        return post(endpoint, body, context, false, serverUrl, true, true)
+        return post(endpoint, body, context, false, serverUrl, true, true, requestClass, idempotencyKey)
     }
 
     @JvmStatic
     fun postOnThread(endpoint: String, body: String, context: Context, chaffRequest: Boolean, server: String, authenticate: Boolean, pin: Boolean) {
         Single.fromCallable {
-            return@fromCallable Fetcher.post(endpoint, body, context, chaffRequest, server, authenticate, pin)
+            return@fromCallable Fetcher.post(endpoint, body, context, chaffRequest, server, authenticate, pin, if (chaffRequest) RequestClass.CHAFF else RequestClass.METRICS)
         }
-        .subscribeOn(Schedulers.io())
+        .subscribeOn(RequestScheduler.background)
         .observeOn(AndroidSchedulers.mainThread())
         .subscribe({ success ->
             Events.raiseEvent(if (success) Events.INFO else Events.ERROR, "postOnThread - ${if (success) "success" else "failed"}")
@@ -338,29 +377,42 @@ object Fetcher {
     }
 
     @JvmStatic
-    fun post(endpoint: String, body: String, context: Context, chaffRequest: Boolean, server: String, authenticate: Boolean, pin: Boolean): Boolean {
+    fun post(endpoint: String, body: String, context: Context, chaffRequest: Boolean, server: String, authenticate: Boolean, pin: Boolean, requestClass: RequestClass, idempotencyKey: String? = null): Boolean {
 
         try {
             var url = URL("${server}${endpoint}")
-            val client = getOkClient(pin, authenticate, context)
+            val client = getOkClient(pin, authenticate, context, requestClass)
+            // chaff must keep its size shaping so it is never compressed
+            val compressed = if (chaffRequest) null else RequestCompression.compress(body, context)
             val builder = Request.Builder()
                     .url(url)
-                    .post(body.toRequestBody())
+                    .post(compressed?.toRequestBody() ?: body.toRequestBody())
                     .addHeader("Accept", "application/json")
                     .addHeader("Content-Type", "application/json; charset=UTF-8")
+            if (compressed != null) {
+                builder.addHeader("Content-Encoding", "gzip")
+            }
             if (chaffRequest) {
                 builder.addHeader("X-Chaff", "chaff")
             }
+            if (idempotencyKey != null) {
+                builder.addHeader("Idempotency-Key", idempotencyKey)
+            }
             val request = builder.build()
-            client.newCall(request).execute().use { response ->
-                if (response.isSuccessful) {
-                    Events.raiseEvent(Events.INFO, "post - HTTP success: ${response.code}")
-                    return true
-                } else {
-                    Events.raiseEvent(Events.ERROR, "post - HTTP error: ${response.code}")
-                    return false
-                }
+            RequestScheduler.execute(requestClass) {
+                client.newCall(request).execute().use { response ->
+                    if (!chaffRequest) {
+                        RequestCompression.recordAcceptEncoding(response, context)
+                    }
+                    if (response.isSuccessful) {
+                        Events.raiseEvent(Events.INFO, "post - HTTP success: ${response.code}")
+                        return true
+                    } else {
+                        Events.raiseEvent(Events.ERROR, "post - HTTP error: ${response.code}")
+                        return false
+                    }
 
+                }
             }
 
         } catch (ex: Exception) {
@@ -370,7 +422,7 @@ object Fetcher {
     }
 
     @JvmStatic
-    public fun fetch(endpoint: String, context: Context): String? {
+    public fun fetch(endpoint: String, context: Context, requestClass: RequestClass): String? {
 
         val url = getURL(endpoint, context)
 
@@ -378,10 +430,50 @@ object Fetcher {
 
         val pin = true
         val authenticate = true
-        return Fetcher.fetchInternal(url, pin, authenticate, context)
+        return Fetcher.fetchInternal(url, pin, authenticate, context, requestClass)
 
     }
 
+    // GET with If-None-Match, a 304 is returned as notModified so callers can keep their cached copy
+    @JvmStatic
+    fun fetchConditional(endpoint: String, etag: String?, context: Context, requestClass: RequestClass): ConditionalResponse? {
+        try {
+            val url = getURL(endpoint, context)
+
+            Events.raiseEvent(Events.INFO, "fetchConditional - fetching from: $url")
+
+            val client = getOkClient(true, true, context, requestClass)
+            val builder = Request.Builder()
+                    .url(url)
+                    .addHeader("Accept", "application/json")
+                    .get()
+            if (!etag.isNullOrEmpty()) {
+                builder.addHeader("If-None-Match", etag)
+            }
+            val request = builder.build()
+
+            RequestScheduler.execute(requestClass) {
+                client.newCall(request).execute().use { response ->
+                    RequestCompression.recordAcceptEncoding(response, context)
+                    if (response.code == 304) {
+                        Events.raiseEvent(Events.INFO, "fetchConditional - not modified")
+                        return ConditionalResponse(null, etag, true)
+                    }
+                    if (response.isSuccessful) {
+                        Events.raiseEvent(Events.INFO, "fetchConditional - success: ${response.code}")
+                        return ConditionalResponse(response.body?.string(), response.header("ETag"), false)
+                    }
+                    Events.raiseEvent(Events.ERROR, "fetchConditional - HTTP error: ${response.code}")
+                    return null
+                }
+            }
+
+        } catch (ex: Exception) {
+            Events.raiseError("fetchConditional error", ex)
+        }
+        return null
+    }
+
     @JvmStatic
     fun fetchKeyFile(endpoint: String, context: Context): String? {
 
@@ -404,33 +496,35 @@ object Fetcher {
         }
 
         val url = URL("${serverUrl}$endpoint")
-        return Fetcher.fetchInternal(url, pin, authenticate, context)
+        return Fetcher.fetchInternal(url, pin, authenticate, context, RequestClass.LISTING)
     }
 
     @JvmStatic
-    public fun fetchInternal(url: URL, pin: Boolean = true, authenticate: Boolean = true, context: Context): String? {
+    public fun fetchInternal(url: URL, pin: Boolean = true, authenticate: Boolean = true, context: Context, requestClass: RequestClass): String? {
         try {
 
             Events.raiseEvent(Events.INFO, "fetch - fetching from: $url")
 
-            val client = Fetcher.getOkClient(pin, authenticate, context)
+            val client = Fetcher.getOkClient(pin, authenticate, context, requestClass)
             val request = Request.Builder()
                     .url(url)
                     .addHeader("Accept", "application/json")
                     .get()
                     .build()
 
-            client.newCall(request).execute().use { response ->
-                if (response.isSuccessful) {
-                    Events.raiseEvent(Events.INFO, "fetch - success: ${response.code}")
+            RequestScheduler.execute(requestClass) {
+                client.newCall(request).execute().use { response ->
+                    if (response.isSuccessful) {
+                        Events.raiseEvent(Events.INFO, "fetch - success: ${response.code}")
 
-                    return response.body?.string()
+                        return response.body?.string()
 
-                } else {
-                    Events.raiseEvent(Events.ERROR, "fetch - HTTP error: ${response.code}")
-                    return null
-                }
+                    } else {
+                        Events.raiseEvent(Events.ERROR, "fetch - HTTP error: ${response.code}")
+                        return null
+                    }
 
+                }
             }
 
         } catch (ex: Exception) {
@@ -481,10 +575,11 @@ object Fetcher {
 
             Events.raiseEvent(Events.INFO, "triggerCallback - sending: ${daysSinceExposure} ${Date(daysSinceExposure)}")
             val callbackParams = Callback(callbackNum, daysSinceExposure, exposureEntity.daysSinceLastExposure(), payload)
-            val success = post("/callback", Gson().toJson(callbackParams), context)
+            // one callback per exposure day, replays and repeated broadcasts share the key
+            val success = Outbox.send("callback-$daysSinceExposure", "/callback", Gson().toJson(callbackParams), RequestClass.CALLBACK, context)
 
             if (!success) {
-                Events.raiseEvent(Events.ERROR, "triggerCallback - failed")
+                Events.raiseEvent(Events.ERROR, "triggerCallback - failed, queued for retry")
                 return
             }
             Events.raiseEvent(Events.INFO, "triggerCallback - success")
@@ -511,9 +606,9 @@ object Fetcher {
             val metric = Metric("android", event, version, payload)
 
             Single.fromCallable {
-                return@fromCallable Fetcher.post("/metrics", Gson().toJson(metric), context)
+                return@fromCallable Outbox.send(UUID.randomUUID().toString(), "/metrics", Gson().toJson(metric), RequestClass.METRICS, context)
             }
-                    .subscribeOn(Schedulers.io())
+                    .subscribeOn(RequestScheduler.background)
                     .observeOn(AndroidSchedulers.mainThread())
                     .subscribe({ success ->
                         Events.raiseEvent(if (success) Events.INFO else Events.ERROR, "saveMetric - ${if (success) "success" else "failed"}")
@@ -0,0 +1,121 @@
+package ie.gov.tracing.network
+
+import android.content.Context
+import androidx.work.BackoffPolicy
+import androidx.work.Constraints
+import androidx.work.ExistingWorkPolicy
+import androidx.work.NetworkType
+import androidx.work.OneTimeWorkRequest
+import androidx.work.WorkManager
+import androidx.work.Worker
+import androidx.work.WorkerParameters
+import ie.gov.tracing.Tracing
+import ie.gov.tracing.common.AppExecutors
+import ie.gov.tracing.common.Events
+import ie.gov.tracing.storage.ExposureNotificationRepository
+import ie.gov.tracing.storage.OutboxEntity
+import ie.gov.tracing.storage.SharedPrefs
+import java.util.concurrent.TimeUnit
+
+// durable store and forward for POSTs we can't afford to lose (callbacks and metrics)
+object Outbox {
+    private const val WORKER_NAME = "OutboxWorker"
+    private const val BATCH_SIZE = 20
+    private const val MAX_ATTEMPTS = 10
+    private const val RETRY_DELAY_SECONDS = 30L
+    private val MAX_AGE_MS = TimeUnit.DAYS.toMillis(7)
+    // well past the callback and metrics call timeouts, a younger unattempted row may still be posting
+    private val IN_FLIGHT_MS = TimeUnit.MINUTES.toMillis(5)
+
+    @JvmStatic
+    fun send(idempotencyKey: String, endpoint: String, body: String, requestClass: RequestClass, context: Context): Boolean {
+        val repository = ExposureNotificationRepository(context)
+        // the write isn't awaited, replay leaves unattempted rows alone until IN_FLIGHT_MS has passed
+        val recorded = repository.insertOutboxEntityAsync(OutboxEntity.create(idempotencyKey, endpoint, body, requestClass.key))
+
+        val success = Fetcher.post(endpoint, body, context, requestClass, idempotencyKey)
+        recorded.addListener({
+            if (success) {
+                repository.deleteOutboxEntitiesAsync(listOf(idempotencyKey))
+            } else {
+                // counting the attempt hands the row over to replay straight away
+                repository.markOutboxAttemptsAsync(listOf(idempotencyKey))
+                        .addListener({ scheduleReplay(context) }, AppExecutors.getBackgroundExecutor())
+            }
+        }, AppExecutors.getBackgroundExecutor())
+
+        if (!success) {
+            Events.raiseEvent(Events.INFO, "outbox - $endpoint failed, scheduling replay")
+        }
+        return success
+    }
+
+    // returns false if anything is left to deliver
+    @JvmStatic
+    fun replay(context: Context): Boolean {
+        val repository = ExposureNotificationRepository(context)
+        repository.deleteExpiredOutboxEntities(System.currentTimeMillis() - MAX_AGE_MS, MAX_ATTEMPTS).get()
+        if (!SharedPrefs.getBoolean("analyticsOptin", context)) {
+            // metrics queued before the user opted out must not be sent
+            repository.deleteOutboxEntitiesByClassAsync(RequestClass.METRICS.key).get()
+        }
+
+        while (true) {
+            val pending = repository.getPendingOutboxEntitiesAsync(System.currentTimeMillis() - IN_FLIGHT_MS, BATCH_SIZE).get()
+            if (pending.isEmpty()) {
+                return true
+            }
+            Events.raiseEvent(Events.INFO, "outbox - replaying ${pending.size} requests")
+
+            val delivered = mutableListOf<String>()
+            val failed = mutableListOf<String>()
+            pending.forEach { entity ->
+                val requestClass = RequestClass.fromKey(entity.requestClass)
+                if (Fetcher.post(entity.endpoint, entity.body, context, requestClass, entity.idempotencyKey)) {
+                    delivered.add(entity.idempotencyKey)
+                    if (requestClass == RequestClass.CALLBACK) {
+                        Fetcher.saveMetric("CALLBACK_REQUEST", context)
+                    }
+                } else {
+                    failed.add(entity.idempotencyKey)
+                }
+            }
+
+            if (delivered.isNotEmpty()) {
+                repository.deleteOutboxEntitiesAsync(delivered).get()
+            }
+            if (failed.isNotEmpty()) {
+                repository.markOutboxAttemptsAsync(failed).get()
+                Events.raiseEvent(Events.INFO, "outbox - delivered ${delivered.size}, failed ${failed.size}")
+                return false
+            }
+        }
+    }
+
+    private fun scheduleReplay(context: Context) {
+        try {
+            val workRequest = OneTimeWorkRequest.Builder(OutboxWorker::class.java)
+                    .setConstraints(
+                            Constraints.Builder()
+                                    .setRequiredNetworkType(NetworkType.CONNECTED)
+                                    .build())
+                    .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, RETRY_DELAY_SECONDS, TimeUnit.SECONDS)
+                    .build()
+            WorkManager.getInstance(context).enqueueUniqueWork(WORKER_NAME, ExistingWorkPolicy.KEEP, workRequest)
+        } catch (ex: Exception) {
+            Events.raiseError("outbox - scheduleReplay", ex)
+        }
+    }
+}
+
+class OutboxWorker(context: Context, workerParams: WorkerParameters) : Worker(context, workerParams) {
+    override fun doWork(): Result {
+        return try {
+            Tracing.currentContext = applicationContext
+            if (Outbox.replay(applicationContext)) Result.success() else Result.retry()
+        } catch (ex: Exception) {
+            Events.raiseError("OutboxWorker - doWork", ex)
+            Result.retry()
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package ie.gov.tracing.network
+
+// priority 0 is the most important, AUTH is never queued as it runs inside other requests
+enum class RequestClass(val key: String, val defaultProfile: TimeoutProfile, val priority: Int, val maxConcurrent: Int) {
+    CALLBACK("callback", TimeoutProfile(15, 30, 30, 60), 0, 2),
+    AUTH("auth", TimeoutProfile(10, 20, 20, 30), 0, Int.MAX_VALUE),
+    SETTINGS("settings", TimeoutProfile(10, 20, 20, 30), 1, 1),
+    LISTING("listing", TimeoutProfile(10, 20, 20, 45), 1, 1),
+    EXPORT("export", TimeoutProfile(15, 30, 30, 300, 2048), 2, 2),
+    METRICS("metrics", TimeoutProfile(10, 10, 10, 20), 3, 1),
+    CHAFF("chaff", TimeoutProfile(10, 10, 10, 20), 4, 1);
+
+    companion object {
+        @JvmStatic
+        fun fromKey(key: String): RequestClass = values().firstOrNull { it.key == key } ?: METRICS
+    }
+}
@@ -0,0 +1,110 @@
+package ie.gov.tracing.network
+
+import android.content.Context
+import androidx.annotation.VisibleForTesting
+import ie.gov.tracing.common.Events
+import ie.gov.tracing.storage.SharedPrefs
+import okhttp3.Response
+import java.io.ByteArrayOutputStream
+import java.util.Locale
+import java.util.concurrent.atomic.AtomicLong
+import java.util.zip.GZIPOutputStream
+
+// gzip request bodies once the server has told us it accepts them (Accept-Encoding on a
+// response, RFC 7694). responses are already negotiated by okhttp which asks for gzip by default
+object RequestCompression {
+    private const val PREFS_KEY = "requestGzipSupported"
+    private const val MIN_SIZE = 1024
+
+    @Volatile
+    private var serverAcceptsGzip: Boolean? = null
+
+    private val requests = AtomicLong()
+    private val rawBytes = AtomicLong()
+    private val sentBytes = AtomicLong()
+
+    // returns null when the body should be sent as is
+    @JvmStatic
+    fun compress(body: String, context: Context): ByteArray? {
+        if (!acceptsGzip(context)) return null
+
+        val raw = body.toByteArray(Charsets.UTF_8)
+        val compressed = gzip(raw) ?: return null
+
+        requests.incrementAndGet()
+        rawBytes.addAndGet(raw.size.toLong())
+        sentBytes.addAndGet(compressed.size.toLong())
+        return compressed
+    }
+
+    @JvmStatic
+    fun recordAcceptEncoding(response: Response, context: Context) {
+        val header = response.header("Accept-Encoding") ?: return
+        val supported = supportsGzip(header)
+        if (supported != serverAcceptsGzip) {
+            serverAcceptsGzip = supported
+            SharedPrefs.setBoolean(PREFS_KEY, supported, context)
+            Events.raiseEvent(Events.INFO, "request compression supported: $supported")
+        }
+    }
+
+    // null for bodies too small to be worth it or that gzip doesn't shrink
+    internal fun gzip(raw: ByteArray): ByteArray? {
+        if (raw.size < MIN_SIZE) return null
+
+        val out = ByteArrayOutputStream(raw.size / 2)
+        GZIPOutputStream(out).use { it.write(raw) }
+        val compressed = out.toByteArray()
+        return if (compressed.size < raw.size) compressed else null
+    }
+
+    // gzip (or *) listed with a q-value above 0, "gzip;q=0" explicitly refuses it (RFC 7231 5.3.4)
+    internal fun supportsGzip(header: String): Boolean {
+        var gzip: Double? = null
+        var wildcard: Double? = null
+        for (item in header.split(",")) {
+            val parts = item.split(";")
+            val quality = qValue(parts.drop(1)) ?: continue
+            when (parts[0].trim().toLowerCase(Locale.ROOT)) {
+                "gzip", "x-gzip" -> gzip = quality
+                "*" -> wildcard = quality
+            }
+        }
+        return (gzip ?: wildcard ?: 0.0) > 0.0
+    }
+
+    // 1 when no q parameter is given, null when it is malformed so the coding is ignored
+    private fun qValue(params: List<String>): Double? {
+        for (param in params) {
+            val pair = param.split("=", limit = 2)
+            if (pair[0].trim().equals("q", ignoreCase = true)) {
+                return pair.getOrNull(1)?.trim()?.toDoubleOrNull()?.takeIf { it in 0.0..1.0 }
+            }
+        }
+        return 1.0
+    }
+
+    @VisibleForTesting
+    internal fun reset() {
+        serverAcceptsGzip = null
+        requests.set(0)
+        rawBytes.set(0)
+        sentBytes.set(0)
+    }
+
+    @JvmStatic
+    fun summary(): String {
+        val raw = rawBytes.get()
+        val sent = sentBytes.get()
+        return "requests: ${requests.get()}, raw: $raw, sent: $sent, saved: ${raw - sent}"
+    }
+
+    private fun acceptsGzip(context: Context): Boolean {
+        var supported = serverAcceptsGzip
+        if (supported == null) {
+            supported = SharedPrefs.getBoolean(PREFS_KEY, context)
+            serverAcceptsGzip = supported
+        }
+        return supported
+    }
+}
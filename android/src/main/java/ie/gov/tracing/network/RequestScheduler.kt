@@ -0,0 +1,72 @@
+package ie.gov.tracing.network
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import io.reactivex.Scheduler
+import io.reactivex.schedulers.Schedulers
+import java.util.concurrent.Executors
+
+// gates outgoing requests by RequestClass: each class has its own concurrency limit and
+// a freed slot always goes to the highest priority class that is waiting and able to run
+object RequestScheduler {
+    private const val MAX_CONCURRENT = 4
+    private const val BACKGROUND_THREADS = 2
+
+    private val lock = Object()
+    private val active = IntArray(RequestClass.values().size)
+    private val waiting = IntArray(RequestClass.values().size)
+    private var totalActive = 0
+
+    // fire and forget posts (metrics, chaff) run here instead of the shared io pool
+    @JvmStatic
+    val background: Scheduler = Schedulers.from(Executors.newFixedThreadPool(BACKGROUND_THREADS,
+            ThreadFactoryBuilder().setDaemon(true).setNameFormat("Requests #%d").build()))
+
+    inline fun <T> execute(requestClass: RequestClass, call: () -> T): T {
+        if (requestClass == RequestClass.AUTH) {
+            return call()
+        }
+        acquire(requestClass)
+        try {
+            return call()
+        } finally {
+            release(requestClass)
+        }
+    }
+
+    @PublishedApi
+    internal fun acquire(requestClass: RequestClass) {
+        synchronized(lock) {
+            waiting[requestClass.ordinal]++
+            try {
+                while (!canRun(requestClass)) {
+                    lock.wait()
+                }
+            } finally {
+                waiting[requestClass.ordinal]--
+            }
+            active[requestClass.ordinal]++
+            totalActive++
+        }
+    }
+
+    @PublishedApi
+    internal fun release(requestClass: RequestClass) {
+        synchronized(lock) {
+            active[requestClass.ordinal]--
+            totalActive--
+            lock.notifyAll()
+        }
+    }
+
+    private fun canRun(requestClass: RequestClass): Boolean {
+        if (totalActive >= MAX_CONCURRENT || active[requestClass.ordinal] >= requestClass.maxConcurrent) {
+            return false
+        }
+        for (other in RequestClass.values()) {
+            if (other.priority < requestClass.priority && waiting[other.ordinal] > 0 && active[other.ordinal] < other.maxConcurrent) {
+                return false
+            }
+        }
+        return true
+    }
+}
@@ -0,0 +1,71 @@
+package ie.gov.tracing.network
+
+import android.content.Context
+import androidx.annotation.Keep
+import com.google.gson.Gson
+import com.google.gson.reflect.TypeToken
+import ie.gov.tracing.common.Events
+import ie.gov.tracing.storage.SharedPrefs
+
+// connect/read/write/call are in seconds, minBytesPerSecond is a throughput in bytes per second,
+// a negative minBytesPerSecond from the server disables the download watchdog
+@Keep
+data class TimeoutProfile(val connect: Long, val read: Long, val write: Long, val call: Long, val minBytesPerSecond: Long = 0)
+
+object TimeoutProfiles {
+    private const val PREFS_KEY = "networkTimeouts"
+
+    // replaced wholesale with an immutable copy, never mutated, so readers need no lock
+    @Volatile
+    private var overrides: Map<String, TimeoutProfile>? = null
+
+    @JvmStatic
+    fun get(requestClass: RequestClass, context: Context): TimeoutProfile {
+        val profile = (overrides ?: load(context))[requestClass.key] ?: return requestClass.defaultProfile
+        val fallback = requestClass.defaultProfile
+
+        // server values of 0 or missing fields keep the built in default
+        return TimeoutProfile(
+                if (profile.connect > 0) profile.connect else fallback.connect,
+                if (profile.read > 0) profile.read else fallback.read,
+                if (profile.write > 0) profile.write else fallback.write,
+                if (profile.call > 0) profile.call else fallback.call,
+                when {
+                    profile.minBytesPerSecond > 0 -> profile.minBytesPerSecond
+                    profile.minBytesPerSecond < 0 -> 0
+                    else -> fallback.minBytesPerSecond
+                })
+    }
+
+    @JvmStatic
+    @Synchronized
+    fun configure(profiles: Map<String, TimeoutProfile>?, context: Context) {
+        try {
+            val value = profiles?.toMap() ?: emptyMap()
+            if (value == overrides) return
+
+            overrides = value
+            SharedPrefs.setString(PREFS_KEY, Gson().toJson(value), context)
+            Events.raiseEvent(Events.INFO, "timeout profiles updated: ${value.keys}")
+        } catch (ex: Exception) {
+            Events.raiseError("TimeoutProfiles.configure", ex)
+        }
+    }
+
+    @Synchronized
+    private fun load(context: Context): Map<String, TimeoutProfile> {
+        overrides?.let { return it }
+        var loaded: Map<String, TimeoutProfile> = emptyMap()
+        try {
+            val data = SharedPrefs.getString(PREFS_KEY, context)
+            if (data.isNotEmpty()) {
+                val type = object : TypeToken<Map<String, TimeoutProfile>>() {}.type
+                loaded = (Gson().fromJson<Map<String, TimeoutProfile>>(data, type) ?: emptyMap()).toMap()
+            }
+        } catch (ex: Exception) {
+            Events.raiseError("TimeoutProfiles.load", ex)
+        }
+        overrides = loaded
+        return loaded
+    }
+}
@@ -19,11 +19,13 @@ import ie.gov.tracing.common.Events;
 @Database(
     entities = {
       ExposureEntity.class,
-      TokenEntity.class
+      TokenEntity.class,
+      OutboxEntity.class,
+      WindowDigestEntity.class
     },
-    version = 2,
+    version = 4,
     exportSchema = false)
-@TypeConverters({ZonedDateTimeTypeConverter.class})
+@TypeConverters({ZonedDateTimeTypeConverter.class, IntArrayTypeConverter.class})
 public abstract class ExposureNotificationDatabase extends RoomDatabase {
   private static final String DATABASE_NAME = "exposurenotifications_encrypted";
 
@@ -31,6 +33,8 @@ public abstract class ExposureNotificationDatabase extends RoomDatabase {
   private static volatile ExposureNotificationDatabase INSTANCE;
   abstract ExposureDao exposureDao();
   abstract TokenDao tokenDao();
+  abstract OutboxDao outboxDao();
+  abstract WindowDigestDao windowDigestDao();
 
   static synchronized ExposureNotificationDatabase getInstance(Context context) {
     if (INSTANCE == null) {
@@ -56,7 +60,7 @@ public abstract class ExposureNotificationDatabase extends RoomDatabase {
       SupportFactory sqlcipherFactory = new SupportFactory(password.getBytes());
       return Room.databaseBuilder(
               context.getApplicationContext(), ExposureNotificationDatabase.class, DATABASE_NAME).openHelperFactory(sqlcipherFactory)
-              .addMigrations(MIGRATION_1_2)
+              .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4)
               .build();
     }
     catch (Exception ex) {
@@ -85,4 +89,18 @@ public abstract class ExposureNotificationDatabase extends RoomDatabase {
     }
   };
 
+  static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+    @Override
+    public void migrate(SupportSQLiteDatabase database) {
+      database.execSQL("CREATE TABLE IF NOT EXISTS OutboxEntity (idempotency_key TEXT NOT NULL, endpoint TEXT NOT NULL, body TEXT NOT NULL, request_class TEXT NOT NULL, created_timestamp_ms INTEGER NOT NULL, attempts INTEGER NOT NULL, PRIMARY KEY(idempotency_key))");
+    }
+  };
+
+  static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+    @Override
+    public void migrate(SupportSQLiteDatabase database) {
+      database.execSQL("CREATE TABLE IF NOT EXISTS WindowDigestEntity (digest TEXT NOT NULL, date_ms INTEGER NOT NULL, calibration_confidence INTEGER NOT NULL, report_type INTEGER NOT NULL, infectiousness INTEGER NOT NULL, scans BLOB NOT NULL, config_version INTEGER NOT NULL, buckets BLOB NOT NULL, weighted_buckets BLOB NOT NULL, exceeds_thresholds INTEGER NOT NULL, created_timestamp_ms INTEGER NOT NULL, PRIMARY KEY(digest))");
+    }
+  };
+
 }
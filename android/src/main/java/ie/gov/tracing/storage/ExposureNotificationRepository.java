@@ -11,12 +11,16 @@ import java.util.List;
 public class ExposureNotificationRepository {
   private final ExposureDao exposureDao;
   private final TokenDao tokenDao;
+  private final OutboxDao outboxDao;
+  private final WindowDigestDao windowDigestDao;
 
   public ExposureNotificationRepository(Context context) {
     ExposureNotificationDatabase exposureNotificationDatabase =
         ExposureNotificationDatabase.getInstance(context);
     exposureDao = exposureNotificationDatabase.exposureDao();
     tokenDao = exposureNotificationDatabase.tokenDao();
+    outboxDao = exposureNotificationDatabase.outboxDao();
+    windowDigestDao = exposureNotificationDatabase.windowDigestDao();
   }
 
   public ListenableFuture<Void> upsertExposureEntitiesAsync(List<ExposureEntity> entities) {
@@ -54,4 +58,48 @@ public class ExposureNotificationRepository {
   public ListenableFuture<Void> deleteExposuresBefore(long beforeTimeMs) {
     return exposureDao.deleteBefore(beforeTimeMs);
   }
+
+  public ListenableFuture<Void> insertOutboxEntityAsync(OutboxEntity entity) {
+    return outboxDao.insertAsync(entity);
+  }
+
+  public ListenableFuture<List<OutboxEntity>> getPendingOutboxEntitiesAsync(long inFlightBeforeMs, int limit) {
+    return outboxDao.getPendingAsync(inFlightBeforeMs, limit);
+  }
+
+  public ListenableFuture<Void> deleteOutboxEntitiesByClassAsync(String requestClass) {
+    return outboxDao.deleteByRequestClassAsync(requestClass);
+  }
+
+  public ListenableFuture<Void> deleteOutboxEntitiesAsync(List<String> keys) {
+    return outboxDao.deleteByKeysAsync(keys);
+  }
+
+  public ListenableFuture<Void> deleteAllOutboxEntitiesAsync() {
+    return outboxDao.deleteAllAsync();
+  }
+
+  public ListenableFuture<Void> markOutboxAttemptsAsync(List<String> keys) {
+    return outboxDao.incrementAttemptsAsync(keys);
+  }
+
+  public ListenableFuture<Void> deleteExpiredOutboxEntities(long beforeTimeMs, int maxAttempts) {
+    return outboxDao.deleteExpired(beforeTimeMs, maxAttempts);
+  }
+
+  public ListenableFuture<List<WindowDigestEntity>> getAllWindowDigestsAsync() {
+    return windowDigestDao.getAllAsync();
+  }
+
+  public ListenableFuture<Void> upsertWindowDigestsAsync(List<WindowDigestEntity> entities) {
+    return windowDigestDao.upsertAsync(entities);
+  }
+
+  public ListenableFuture<Void> deleteAllWindowDigestsAsync() {
+    return windowDigestDao.deleteAllAsync();
+  }
+
+  public ListenableFuture<Void> deleteWindowDigestsBefore(long beforeTimeMs) {
+    return windowDigestDao.deleteBefore(beforeTimeMs);
+  }
 }
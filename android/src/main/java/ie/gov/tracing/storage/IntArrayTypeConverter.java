@@ -0,0 +1,37 @@
+package ie.gov.tracing.storage;
+
+import androidx.room.TypeConverter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * TypeConverters for storing int arrays as packed big-endian BLOBs.
+ */
+public class IntArrayTypeConverter {
+
+  private IntArrayTypeConverter() {
+    // no instantiation
+  }
+
+  @TypeConverter
+  public static int[] toIntArray(byte[] data) {
+    if (data != null) {
+      int[] values = new int[data.length / 4];
+      ByteBuffer.wrap(data).asIntBuffer().get(values);
+      return values;
+    } else {
+      return null;
+    }
+  }
+
+  @TypeConverter
+  public static byte[] fromIntArray(int[] values) {
+    if (values != null) {
+      ByteBuffer buffer = ByteBuffer.allocate(values.length * 4);
+      buffer.asIntBuffer().put(values);
+      return buffer.array();
+    } else {
+      return null;
+    }
+  }
+}
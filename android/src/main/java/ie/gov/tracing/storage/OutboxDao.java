@@ -0,0 +1,37 @@
+package ie.gov.tracing.storage;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.List;
+
+@Dao
+abstract class OutboxDao {
+
+  // rows that were never attempted and are newer than inFlightBeforeMs may still be posting
+  @Query("SELECT * FROM OutboxEntity WHERE attempts > 0 OR created_timestamp_ms < :inFlightBeforeMs ORDER BY created_timestamp_ms ASC LIMIT :limit")
+  abstract ListenableFuture<List<OutboxEntity>> getPendingAsync(long inFlightBeforeMs, int limit);
+
+  // an existing row with the same idempotency key wins, so repeated enqueues are de-duplicated
+  @Insert(onConflict = OnConflictStrategy.IGNORE)
+  abstract ListenableFuture<Void> insertAsync(OutboxEntity entity);
+
+  @Query("DELETE FROM OutboxEntity WHERE idempotency_key IN (:keys)")
+  abstract ListenableFuture<Void> deleteByKeysAsync(List<String> keys);
+
+  @Query("UPDATE OutboxEntity SET attempts = attempts + 1 WHERE idempotency_key IN (:keys)")
+  abstract ListenableFuture<Void> incrementAttemptsAsync(List<String> keys);
+
+  @Query("DELETE FROM OutboxEntity WHERE request_class = :requestClass")
+  abstract ListenableFuture<Void> deleteByRequestClassAsync(String requestClass);
+
+  @Query("DELETE FROM OutboxEntity")
+  abstract ListenableFuture<Void> deleteAllAsync();
+
+  @Query("DELETE FROM OutboxEntity WHERE created_timestamp_ms < :deleteBeforeMs OR attempts >= :maxAttempts")
+  abstract ListenableFuture<Void> deleteExpired(long deleteBeforeMs, int maxAttempts);
+}
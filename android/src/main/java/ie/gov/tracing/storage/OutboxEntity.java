@@ -0,0 +1,112 @@
+package ie.gov.tracing.storage;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+import com.google.common.base.Preconditions;
+
+@Entity
+public class OutboxEntity {
+
+  @PrimaryKey
+  @ColumnInfo(name = "idempotency_key")
+  @NonNull
+  private String idempotencyKey;
+
+  @ColumnInfo(name = "endpoint")
+  @NonNull
+  private String endpoint;
+
+  @ColumnInfo(name = "body")
+  @NonNull
+  private String body;
+
+  @ColumnInfo(name = "request_class")
+  @NonNull
+  private String requestClass;
+
+  @ColumnInfo(name = "created_timestamp_ms")
+  private long createdTimestampMs;
+
+  @ColumnInfo(name = "attempts")
+  private int attempts;
+
+  OutboxEntity(@NonNull String idempotencyKey, @NonNull String endpoint, @NonNull String body,
+               @NonNull String requestClass) {
+    this.createdTimestampMs = System.currentTimeMillis();
+    this.idempotencyKey = idempotencyKey;
+    this.endpoint = endpoint;
+    this.body = body;
+    this.requestClass = requestClass;
+    this.attempts = 0;
+  }
+
+  /**
+   * Creates an OutboxEntity.
+   *
+   * @param idempotencyKey Key sent with every delivery attempt, duplicates are ignored on insert.
+   * @param endpoint The server endpoint to POST to.
+   * @param body The JSON body.
+   * @param requestClass The request class key used for timeouts and scheduling.
+   */
+  public static OutboxEntity create(@NonNull String idempotencyKey, @NonNull String endpoint,
+                                    @NonNull String body, @NonNull String requestClass) {
+    return new OutboxEntity(Preconditions.checkNotNull(idempotencyKey),
+            Preconditions.checkNotNull(endpoint), Preconditions.checkNotNull(body),
+            Preconditions.checkNotNull(requestClass));
+  }
+
+  @NonNull
+  public String getIdempotencyKey() {
+    return idempotencyKey;
+  }
+
+  public void setIdempotencyKey(@NonNull String idempotencyKey) {
+    this.idempotencyKey = idempotencyKey;
+  }
+
+  @NonNull
+  public String getEndpoint() {
+    return endpoint;
+  }
+
+  public void setEndpoint(@NonNull String endpoint) {
+    this.endpoint = endpoint;
+  }
+
+  @NonNull
+  public String getBody() {
+    return body;
+  }
+
+  public void setBody(@NonNull String body) {
+    this.body = body;
+  }
+
+  @NonNull
+  public String getRequestClass() {
+    return requestClass;
+  }
+
+  public void setRequestClass(@NonNull String requestClass) {
+    this.requestClass = requestClass;
+  }
+
+  public long getCreatedTimestampMs() {
+    return createdTimestampMs;
+  }
+
+  void setCreatedTimestampMs(long ms) {
+    this.createdTimestampMs = ms;
+  }
+
+  public int getAttempts() {
+    return attempts;
+  }
+
+  public void setAttempts(int attempts) {
+    this.attempts = attempts;
+  }
+}
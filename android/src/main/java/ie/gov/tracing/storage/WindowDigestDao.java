@@ -0,0 +1,26 @@
+package ie.gov.tracing.storage;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.List;
+
+@Dao
+abstract class WindowDigestDao {
+
+  @Query("SELECT * FROM WindowDigestEntity ORDER BY date_ms DESC")
+  abstract ListenableFuture<List<WindowDigestEntity>> getAllAsync();
+
+  @Insert(onConflict = OnConflictStrategy.REPLACE)
+  abstract ListenableFuture<Void> upsertAsync(List<WindowDigestEntity> entities);
+
+  @Query("DELETE FROM WindowDigestEntity")
+  abstract ListenableFuture<Void> deleteAllAsync();
+
+  @Query("DELETE FROM WindowDigestEntity WHERE date_ms < :deleteBeforeMs")
+  abstract ListenableFuture<Void> deleteBefore(long deleteBeforeMs);
+}
@@ -0,0 +1,180 @@
+package ie.gov.tracing.storage;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * An exposure window seen in a previous risk check, with its packed scan instances and the
+ * aggregates computed for them under the config version stored alongside.
+ */
+@Entity
+public class WindowDigestEntity {
+
+  @PrimaryKey
+  @ColumnInfo(name = "digest")
+  @NonNull
+  private String digest;
+
+  @ColumnInfo(name = "date_ms")
+  private long dateMs;
+
+  @ColumnInfo(name = "calibration_confidence")
+  private int calibrationConfidence;
+
+  @ColumnInfo(name = "report_type")
+  private int reportType;
+
+  @ColumnInfo(name = "infectiousness")
+  private int infectiousness;
+
+  // typical attenuation, min attenuation and seconds since last scan for each scan instance
+  @ColumnInfo(name = "scans", typeAffinity = ColumnInfo.BLOB)
+  @NonNull
+  private int[] scans;
+
+  @ColumnInfo(name = "config_version")
+  private long configVersion;
+
+  @ColumnInfo(name = "buckets", typeAffinity = ColumnInfo.BLOB)
+  @NonNull
+  private int[] buckets;
+
+  @ColumnInfo(name = "weighted_buckets", typeAffinity = ColumnInfo.BLOB)
+  @NonNull
+  private int[] weightedBuckets;
+
+  @ColumnInfo(name = "exceeds_thresholds")
+  private boolean exceedsThresholds;
+
+  @ColumnInfo(name = "created_timestamp_ms")
+  private long createdTimestampMs;
+
+  WindowDigestEntity(@NonNull String digest, long dateMs, int calibrationConfidence, int reportType,
+                     int infectiousness, @NonNull int[] scans, long configVersion,
+                     @NonNull int[] buckets, @NonNull int[] weightedBuckets, boolean exceedsThresholds) {
+    this.createdTimestampMs = System.currentTimeMillis();
+    this.digest = digest;
+    this.dateMs = dateMs;
+    this.calibrationConfidence = calibrationConfidence;
+    this.reportType = reportType;
+    this.infectiousness = infectiousness;
+    this.scans = scans;
+    this.configVersion = configVersion;
+    this.buckets = buckets;
+    this.weightedBuckets = weightedBuckets;
+    this.exceedsThresholds = exceedsThresholds;
+  }
+
+  /**
+   * Creates a WindowDigestEntity.
+   *
+   * @param digest Hash of the window metadata and its scan instances.
+   * @param scans Packed scan instances, three values per scan.
+   * @param configVersion The ExposureConfigCache version the aggregates were computed with.
+   */
+  public static WindowDigestEntity create(@NonNull String digest, long dateMs, int calibrationConfidence,
+                                          int reportType, int infectiousness, @NonNull int[] scans,
+                                          long configVersion, @NonNull int[] buckets,
+                                          @NonNull int[] weightedBuckets, boolean exceedsThresholds) {
+    return new WindowDigestEntity(Preconditions.checkNotNull(digest), dateMs, calibrationConfidence,
+            reportType, infectiousness, Preconditions.checkNotNull(scans), configVersion,
+            Preconditions.checkNotNull(buckets), Preconditions.checkNotNull(weightedBuckets),
+            exceedsThresholds);
+  }
+
+  @NonNull
+  public String getDigest() {
+    return digest;
+  }
+
+  public void setDigest(@NonNull String digest) {
+    this.digest = digest;
+  }
+
+  public long getDateMs() {
+    return dateMs;
+  }
+
+  public void setDateMs(long dateMs) {
+    this.dateMs = dateMs;
+  }
+
+  public int getCalibrationConfidence() {
+    return calibrationConfidence;
+  }
+
+  public void setCalibrationConfidence(int calibrationConfidence) {
+    this.calibrationConfidence = calibrationConfidence;
+  }
+
+  public int getReportType() {
+    return reportType;
+  }
+
+  public void setReportType(int reportType) {
+    this.reportType = reportType;
+  }
+
+  public int getInfectiousness() {
+    return infectiousness;
+  }
+
+  public void setInfectiousness(int infectiousness) {
+    this.infectiousness = infectiousness;
+  }
+
+  @NonNull
+  public int[] getScans() {
+    return scans;
+  }
+
+  public void setScans(@NonNull int[] scans) {
+    this.scans = scans;
+  }
+
+  public long getConfigVersion() {
+    return configVersion;
+  }
+
+  public void setConfigVersion(long configVersion) {
+    this.configVersion = configVersion;
+  }
+
+  @NonNull
+  public int[] getBuckets() {
+    return buckets;
+  }
+
+  public void setBuckets(@NonNull int[] buckets) {
+    this.buckets = buckets;
+  }
+
+  @NonNull
+  public int[] getWeightedBuckets() {
+    return weightedBuckets;
+  }
+
+  public void setWeightedBuckets(@NonNull int[] weightedBuckets) {
+    this.weightedBuckets = weightedBuckets;
+  }
+
+  public boolean getExceedsThresholds() {
+    return exceedsThresholds;
+  }
+
+  public void setExceedsThresholds(boolean exceedsThresholds) {
+    this.exceedsThresholds = exceedsThresholds;
+  }
+
+  public long getCreatedTimestampMs() {
+    return createdTimestampMs;
+  }
+
+  void setCreatedTimestampMs(long ms) {
+    this.createdTimestampMs = ms;
+  }
+}
@@ -0,0 +1,29 @@
+package ie.gov.tracing;
+
+import org.junit.Assume;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.regex.Pattern;
+
+// runs the jmh benchmarks of one class from a unit test, e.g.
+// RUN_BENCHMARKS=1 ./gradlew testDebugUnitTest --tests '*Benchmark'
+public final class Benchmarks {
+
+    private Benchmarks() {
+    }
+
+    public static void run(Class<?> benchmark) throws RunnerException {
+        Assume.assumeTrue("RUN_BENCHMARKS not set", System.getenv("RUN_BENCHMARKS") != null);
+
+        Options options = new OptionsBuilder()
+                .include(Pattern.quote(benchmark.getName()) + "\\.")
+                // forked jvms don't get the gradle test classpath, run in the test jvm instead
+                .forks(0)
+                .shouldFailOnError(true)
+                .build();
+        new Runner(options).run();
+    }
+}
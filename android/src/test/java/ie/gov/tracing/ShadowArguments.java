@@ -0,0 +1,26 @@
+package ie.gov.tracing;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.JavaOnlyArray;
+import com.facebook.react.bridge.JavaOnlyMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+
+// the native maps need the react native libraries loaded, events raised in tests use the java
+// only versions, add com.facebook.react.bridge to the instrumented packages to use it
+@Implements(Arguments.class)
+public class ShadowArguments {
+
+    @Implementation
+    public static WritableMap createMap() {
+        return new JavaOnlyMap();
+    }
+
+    @Implementation
+    public static WritableArray createArray() {
+        return new JavaOnlyArray();
+    }
+}
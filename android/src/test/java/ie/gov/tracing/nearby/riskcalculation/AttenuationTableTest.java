@@ -0,0 +1,59 @@
+package ie.gov.tracing.nearby.riskcalculation;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+public class AttenuationTableTest {
+
+    private static final int[][] THRESHOLDS = {
+            {50, 70, 90},
+            {55, 63, 73},
+            {0, 0, 0},
+            {255, 255, 255},
+            {60, 60, 80},
+            {-10, 40, 300},
+            {45},
+            {},
+            {30, 60, 90, 120},
+            {90, 70, 50},
+            {50, 90, 70},
+    };
+
+    @Test
+    public void everyAttenuation_matchesLinearWalk() {
+        for (int[] thresholds : THRESHOLDS) {
+            AttenuationTable table = new AttenuationTable(thresholds);
+            // one past the byte range on both sides covers the fallback
+            for (int attenuation = -1; attenuation <= AttenuationTable.SIZE; attenuation++) {
+                assertWithMessage("thresholds %s, attenuation %s", java.util.Arrays.toString(thresholds), attenuation)
+                        .that(table.bucketOf(attenuation))
+                        .isEqualTo(BaselineRiskCalculation.bucketOf(thresholds, attenuation));
+            }
+        }
+    }
+
+    @Test
+    public void ascendingThresholds_useTable() {
+        assertThat(new AttenuationTable(new int[]{50, 70, 90}).usesTable()).isTrue();
+        assertThat(new AttenuationTable(new int[]{60, 60, 80}).usesTable()).isTrue();
+        assertThat(new AttenuationTable(new int[]{}).usesTable()).isTrue();
+    }
+
+    @Test
+    public void unorderedThresholds_fallBackToLinearWalk() {
+        assertThat(new AttenuationTable(new int[]{90, 70, 50}).usesTable()).isFalse();
+        assertThat(new AttenuationTable(new int[]{30, 60, 90, 120}).usesTable()).isFalse();
+    }
+
+    @Test
+    public void forConfig_reusesTableForSameThresholds() {
+        AttenuationTable first = AttenuationTable.forConfig(TestConfigs.config(new int[]{50, 70, 90}));
+        AttenuationTable second = AttenuationTable.forConfig(TestConfigs.config(new int[]{50, 70, 90}));
+        AttenuationTable changed = AttenuationTable.forConfig(TestConfigs.config(new int[]{55, 63, 73}));
+
+        assertThat(second).isSameInstanceAs(first);
+        assertThat(changed).isNotSameInstanceAs(first);
+    }
+}
@@ -0,0 +1,69 @@
+package ie.gov.tracing.nearby.riskcalculation;
+
+import com.google.android.gms.nearby.exposurenotification.ScanInstance;
+
+import java.util.List;
+
+import ie.gov.tracing.common.ExposureConfig;
+
+// the scan scoring as it was before the primitive kernel, kept verbatim as the reference the
+// optimised code is compared against
+final class BaselineRiskCalculation {
+
+    private BaselineRiskCalculation() {
+    }
+
+    static int bucketOf(int[] thresholds, int attenuation) {
+        for (int i = 0; i < thresholds.length; i++) {
+            if (attenuation <= thresholds[i]) {
+                return i;
+            }
+        }
+        return 3;
+    }
+
+    static ScanData buildScanData(ExposureConfig config, List<ScanInstance> scanData) {
+        ScanData scanItem = new ScanData();
+        scanItem.setNumScans(scanData.size());
+        double[] thresholdWeightings = new double[]{config.getImmediateDurationWeight(), config.getNearDurationWeight(), config.getMediumDurationWeight(), config.getOtherDurationWeight()};
+
+        for (ScanInstance scan : scanData) {
+            Boolean added = false;
+            for (int i = 0; i < config.getAttenuationDurationThresholds().length; i++) {
+                if (scan.getTypicalAttenuationDb() <= config.getAttenuationDurationThresholds()[i]) {
+                    scanItem.getWeightedBuckets()[i] += scan.getSecondsSinceLastScan() / 60 * thresholdWeightings[i] / 100.0;
+                    scanItem.getBuckets()[i] += scan.getSecondsSinceLastScan() / 60;
+                    added = true;
+                    break;
+                }
+            }
+            if (!added) {
+                int lastBucket = scanItem.getBuckets().length - 1;
+                scanItem.getWeightedBuckets()[lastBucket] += scan.getSecondsSinceLastScan() / 60 * thresholdWeightings[lastBucket] / 100.0;
+                scanItem.getBuckets()[lastBucket] += scan.getSecondsSinceLastScan() / 60;
+            }
+        }
+
+        int totalTime = 0;
+        for (int i = 0; i < scanItem.getWeightedBuckets().length; i++) {
+            totalTime += scanItem.getWeightedBuckets()[i];
+        }
+        if (totalTime >= config.getTimeThreshold()) {
+            scanItem.setExceedsThresholds(true);
+        }
+        return scanItem;
+    }
+
+    static ScanData sumDurations(List<WindowData> windows) {
+        ScanData scanData = new ScanData();
+
+        for (WindowData window : windows) {
+         for (int i = 0; i < scanData.getWeightedBuckets().length; i++) {
+             scanData.getBuckets()[i] += window.getScanData().getBuckets()[i];
+             scanData.getWeightedBuckets()[i] += window.getScanData().getWeightedBuckets()[i];
+         }
+        }
+        scanData.setNumScans(windows.size());
+        return scanData;
+    }
+}
@@ -0,0 +1,134 @@
+package ie.gov.tracing.nearby.riskcalculation;
+
+import com.google.android.gms.nearby.exposurenotification.ExposureWindow;
+import com.google.gson.Gson;
+
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import ie.gov.tracing.Benchmarks;
+import ie.gov.tracing.common.ExposureConfig;
+
+// the risk calculation stages around the scan kernel, run before and after changes to the
+// scoring path to catch regressions
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RiskCalculationBenchmark {
+    private static final int SCANS_PER_WINDOW = 10;
+
+    @Param({"1000", "5000"})
+    public int windowCount;
+
+    @Param({"14"})
+    public int daySpread;
+
+    private ExposureConfig config;
+    private List<ExposureWindow> windows;
+    private ScanAggregator aggregator;
+    private List<WindowData> windowData;
+    private double[] thresholdWeightings;
+    private int[][] attenuationDurations;
+
+    @Setup
+    public void setUp() {
+        config = TestConfigs.config();
+        windows = SyntheticWindows.generate(windowCount, SCANS_PER_WINDOW, daySpread, 42);
+        aggregator = new ScanAggregator(config);
+
+        ScanAggregator.Result scans = aggregator.aggregate(windows);
+        windowData = new ArrayList<>(windowCount);
+        attenuationDurations = new int[windowCount][];
+        for (int i = 0; i < windowCount; i++) {
+            ExposureWindow window = windows.get(i);
+            ScanData scanData = scans.toScanData(i);
+            windowData.add(new WindowData(window.getDateMillisSinceEpoch(), window.getCalibrationConfidence(), window.getReportType(), window.getInfectiousness(), scanData));
+            attenuationDurations[i] = Arrays.copyOf(scanData.getBuckets(), 3);
+        }
+        thresholdWeightings = config.getThresholdWeightings() != null ? config.getThresholdWeightings() : new double[]{1, 1, 0};
+    }
+
+    @Benchmark
+    public int dayIndex() {
+        return new DayIndex(windows, Collections.emptyList()).windowsOn(DayIndex.dayOf(System.currentTimeMillis())).length;
+    }
+
+    @Benchmark
+    public long digests() {
+        long sink = 0;
+        for (ExposureWindow window : windows) {
+            sink += WindowDigests.digestOf(window, WindowDigests.pack(window.getScanInstances())).length();
+        }
+        return sink;
+    }
+
+    // contiguous mode scoring every window, as before the newest first early exit
+    @Benchmark
+    public long contiguousAllWindows() {
+        new DayIndex(windows, Collections.emptyList());
+        ScanAggregator.Result all = aggregator.aggregate(windows);
+        long latestExceeded = -1;
+        for (int i = 0; i < all.count; i++) {
+            if (all.exceedsThresholds[i]) {
+                latestExceeded = Math.max(latestExceeded, windows.get(i).getDateMillisSinceEpoch());
+            }
+        }
+        return latestExceeded;
+    }
+
+    @Benchmark
+    public long contiguousEarlyExit() {
+        List<ExposureDay> days = ExposureDay.extractDays(new DayIndex(windows, Collections.emptyList()), windows,
+                rows -> aggregator.aggregate(DayIndex.select(windows, rows)));
+        for (ExposureDay day : days) {
+            if (day.exceedsThresholds()) {
+                return day.windows().get(0).getDate();
+            }
+        }
+        return -1;
+    }
+
+    @Benchmark
+    public int sumDurations() {
+        return RiskCalculationV2.sumDurations(windowData).getNumScans();
+    }
+
+    @Benchmark
+    public int windowJson() {
+        return new Gson().toJson(windowData).length();
+    }
+
+    @Benchmark
+    public int v1Threshold() {
+        int exceeded = 0;
+        for (int[] durations : attenuationDurations) {
+            if (RiskCalculationV1.totalTime(thresholdWeightings, durations) >= config.getTimeThreshold()) {
+                exceeded++;
+            }
+        }
+        return exceeded;
+    }
+
+    @Test
+    public void run() throws RunnerException {
+        Benchmarks.run(RiskCalculationBenchmark.class);
+    }
+}
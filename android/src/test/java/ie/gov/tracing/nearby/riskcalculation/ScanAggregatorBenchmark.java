@@ -0,0 +1,72 @@
+package ie.gov.tracing.nearby.riskcalculation;
+
+import com.google.android.gms.nearby.exposurenotification.ExposureWindow;
+
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import ie.gov.tracing.Benchmarks;
+import ie.gov.tracing.common.ExposureConfig;
+
+// scoring thousands of windows with the previous per scan loop and with the primitive kernel
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ScanAggregatorBenchmark {
+    @Param({"1000", "5000"})
+    public int windowCount;
+
+    @Param({"10", "30"})
+    public int scansPerWindow;
+
+    private ExposureConfig config;
+    private List<ExposureWindow> windows;
+    private ScanAggregator aggregator;
+    private ScanAggregator weightedAggregator;
+
+    @Setup
+    public void setUp() {
+        config = TestConfigs.config();
+        windows = SyntheticWindows.generate(windowCount, scansPerWindow, 14, 42);
+        aggregator = new ScanAggregator(config);
+        weightedAggregator = new ScanAggregator(config, true);
+    }
+
+    @Benchmark
+    public void baseline(Blackhole blackhole) {
+        for (ExposureWindow window : windows) {
+            blackhole.consume(BaselineRiskCalculation.buildScanData(config, window.getScanInstances()));
+        }
+    }
+
+    @Benchmark
+    public void aggregate(Blackhole blackhole) {
+        blackhole.consume(aggregator.aggregate(windows));
+    }
+
+    @Benchmark
+    public void aggregateWeighted(Blackhole blackhole) {
+        blackhole.consume(weightedAggregator.aggregate(windows));
+    }
+
+    @Test
+    public void run() throws RunnerException {
+        Benchmarks.run(ScanAggregatorBenchmark.class);
+    }
+}
@@ -0,0 +1,236 @@
+package ie.gov.tracing.nearby.riskcalculation;
+
+import com.google.android.gms.nearby.exposurenotification.ExposureWindow;
+import com.google.android.gms.nearby.exposurenotification.Infectiousness;
+import com.google.android.gms.nearby.exposurenotification.ReportType;
+import com.google.android.gms.nearby.exposurenotification.ScanInstance;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import ie.gov.tracing.common.ExposureConfig;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+import static ie.gov.tracing.nearby.riskcalculation.SyntheticWindows.scan;
+import static ie.gov.tracing.nearby.riskcalculation.SyntheticWindows.window;
+
+public class ScanAggregatorTest {
+    private static final long DAY = SyntheticWindows.today();
+
+    @Test
+    public void noScans_matchesBaseline() {
+        ExposureConfig config = TestConfigs.config();
+        ScanAggregator.Result result = assertMatchesBaseline(config, Collections.singletonList(window(DAY, Collections.emptyList())));
+
+        assertThat(result.numScans[0]).isEqualTo(0);
+        assertThat(result.exceedsThresholds[0]).isFalse();
+    }
+
+    @Test
+    public void noScans_zeroThresholdExceeds() {
+        assertMatchesBaseline(TestConfigs.config(new int[]{50, 70, 90}, new double[]{100, 100, 100, 100}, 0),
+                Collections.singletonList(window(DAY, Collections.emptyList())));
+    }
+
+    @Test
+    public void noWindows_emptyResult() {
+        ScanAggregator.Result result = new ScanAggregator(TestConfigs.config()).aggregate(Collections.emptyList());
+
+        assertThat(result.count).isEqualTo(0);
+        assertThat(result.buckets).isEmpty();
+    }
+
+    @Test
+    public void singleBucket_matchesBaseline() {
+        List<ScanInstance> scans = Arrays.asList(scan(40, 300), scan(45, 180), scan(50, 240));
+        ScanAggregator.Result result = assertMatchesBaseline(TestConfigs.config(), Collections.singletonList(window(DAY, scans)));
+
+        assertThat(result.toScanData(0).getBuckets()).isEqualTo(new int[]{12, 0, 0, 0});
+        assertThat(result.exceedsThresholds[0]).isFalse();
+    }
+
+    @Test
+    public void thresholdEdges_matchBaseline() {
+        int[] thresholds = {50, 70, 90};
+        List<ExposureWindow> windows = new ArrayList<>();
+        for (int threshold : thresholds) {
+            for (int attenuation = threshold - 1; attenuation <= threshold + 1; attenuation++) {
+                windows.add(window(DAY, Collections.singletonList(scan(attenuation, 300))));
+            }
+        }
+        ScanAggregator.Result result = assertMatchesBaseline(TestConfigs.config(thresholds), windows);
+
+        // at the threshold stays in the bucket, one above moves to the next
+        assertThat(result.toScanData(1).getBuckets()).isEqualTo(new int[]{5, 0, 0, 0});
+        assertThat(result.toScanData(2).getBuckets()).isEqualTo(new int[]{0, 5, 0, 0});
+        assertThat(result.toScanData(5).getBuckets()).isEqualTo(new int[]{0, 0, 5, 0});
+        assertThat(result.toScanData(8).getBuckets()).isEqualTo(new int[]{0, 0, 0, 5});
+    }
+
+    @Test
+    public void timeThresholdEdge_matchesBaseline() {
+        ExposureConfig config = TestConfigs.config(new int[]{50, 70, 90}, new double[]{100, 100, 100, 100}, 15);
+        ScanAggregator.Result result = assertMatchesBaseline(config, Arrays.asList(
+                window(DAY, Arrays.asList(scan(40, 600), scan(60, 240))),
+                window(DAY, Arrays.asList(scan(40, 600), scan(60, 300)))));
+
+        assertThat(result.exceedsThresholds[0]).isFalse();
+        assertThat(result.exceedsThresholds[1]).isTrue();
+    }
+
+    @Test
+    public void unmatchedAttenuation_goesToLastBucket() {
+        List<ScanInstance> scans = Arrays.asList(scan(95, 300), scan(255, 120));
+
+        assertMatchesBaseline(TestConfigs.config(), Collections.singletonList(window(DAY, scans)));
+        assertMatchesBaseline(TestConfigs.config(new int[]{60}), Collections.singletonList(window(DAY, scans)));
+        assertMatchesBaseline(TestConfigs.config(new int[]{90, 70, 50}), Collections.singletonList(window(DAY, scans)));
+    }
+
+    @Test
+    public void fractionalWeights_truncateAfterEveryScan() {
+        ExposureConfig config = TestConfigs.config(new int[]{50, 70, 90}, new double[]{150, 33.3, 66.7, 12.5}, 5);
+        List<ScanInstance> scans = Arrays.asList(scan(40, 179), scan(40, 179), scan(60, 299), scan(60, 299), scan(80, 119), scan(99, 420));
+        ScanAggregator.Result result = assertMatchesBaseline(config, Collections.singletonList(window(DAY, scans)));
+
+        // 2 * 1.5 = 3 then 3 + 3 = 6, 4 * 0.333 truncates to 1 then 2, 1 * 0.667 to 0, 7 * 0.125 to 0
+        assertThat(result.toScanData(0).getWeightedBuckets()).isEqualTo(new int[]{6, 2, 0, 0});
+    }
+
+    @Test
+    public void randomWindows_matchBaseline() {
+        Random random = new Random(7);
+        for (int run = 0; run < 50; run++) {
+            int[] thresholds = {30 + random.nextInt(30), 0, 0};
+            thresholds[1] = thresholds[0] + random.nextInt(20);
+            thresholds[2] = thresholds[1] + random.nextInt(20);
+            double[] weights = {random.nextInt(200), random.nextInt(200) + random.nextDouble(), random.nextDouble() * 100, random.nextInt(50)};
+            ExposureConfig config = TestConfigs.config(thresholds, weights, random.nextInt(30));
+
+            assertMatchesBaseline(config, SyntheticWindows.generate(100, random.nextInt(20), 14, run));
+        }
+    }
+
+    @Test
+    public void knownRows_areCopied() {
+        ExposureConfig config = TestConfigs.config();
+        List<ExposureWindow> windows = SyntheticWindows.generate(5, 10, 3, 1);
+        ScanData[] known = new ScanData[windows.size()];
+        known[2] = new ScanData(new int[]{1, 2, 3, 4}, new int[]{5, 6, 7, 8}, true, 99);
+
+        ScanAggregator.Result result = new ScanAggregator(config).aggregate(windows, known);
+
+        assertThat(result.toScanData(2).getBuckets()).isEqualTo(known[2].getBuckets());
+        assertThat(result.toScanData(2).getWeightedBuckets()).isEqualTo(known[2].getWeightedBuckets());
+        assertThat(result.numScans[2]).isEqualTo(99);
+        assertThat(result.exceedsThresholds[2]).isTrue();
+        for (int w : new int[]{0, 1, 3, 4}) {
+            assertRowMatches(result, w, BaselineRiskCalculation.buildScanData(config, windows.get(w).getScanInstances()));
+        }
+    }
+
+    @Test
+    public void weightedWindows_scaleByInfectiousnessAndReportType() {
+        ExposureConfig config = TestConfigs.windowWeights(TestConfigs.config(), 50, 200, 100, 80, 50, 100);
+        ScanAggregator aggregator = new ScanAggregator(config, true);
+        List<ScanInstance> scans = Arrays.asList(scan(40, 600), scan(60, 600));
+
+        ScanAggregator.Result result = aggregator.aggregate(Arrays.asList(
+                window(DAY, ReportType.CONFIRMED_TEST, Infectiousness.STANDARD, scans),
+                window(DAY, ReportType.CONFIRMED_CLINICAL_DIAGNOSIS, Infectiousness.HIGH, scans),
+                window(DAY, ReportType.SELF_REPORT, Infectiousness.HIGH, scans),
+                window(DAY, ReportType.REVOKED, Infectiousness.HIGH, scans),
+                window(DAY, ReportType.CONFIRMED_TEST, Infectiousness.NONE, scans)));
+
+        // raw minutes are never weighted
+        for (int w = 0; w < result.count; w++) {
+            assertThat(result.toScanData(w).getBuckets()).isEqualTo(new int[]{10, 10, 0, 0});
+        }
+        assertThat(result.toScanData(0).getWeightedBuckets()).isEqualTo(new int[]{5, 5, 0, 0});
+        assertThat(result.toScanData(1).getWeightedBuckets()).isEqualTo(new int[]{16, 16, 0, 0});
+        assertThat(result.toScanData(2).getWeightedBuckets()).isEqualTo(new int[]{10, 10, 0, 0});
+        assertThat(result.toScanData(3).getWeightedBuckets()).isEqualTo(new int[]{0, 0, 0, 0});
+        assertThat(result.toScanData(4).getWeightedBuckets()).isEqualTo(new int[]{0, 0, 0, 0});
+    }
+
+    @Test
+    public void unweightedAggregator_ignoresWindowWeights() {
+        ExposureConfig config = TestConfigs.config();
+        List<ExposureWindow> windows = SyntheticWindows.generate(50, 8, 5, 3);
+
+        ScanAggregator.Result plain = new ScanAggregator(config).aggregate(windows);
+        ScanAggregator.Result weighted = new ScanAggregator(config, true).aggregate(windows);
+
+        // every weight at 100% leaves the totals untouched
+        assertThat(weighted.weightedBuckets).isEqualTo(plain.weightedBuckets);
+        assertThat(weighted.exceedsThresholds).isEqualTo(plain.exceedsThresholds);
+    }
+
+    @Test
+    public void score_matchesAggregate() {
+        ExposureConfig config = TestConfigs.config(new int[]{50, 70, 90}, new double[]{150, 33.3, 66.7, 12.5}, 10);
+        ScanAggregator aggregator = new ScanAggregator(config, true);
+        AttenuationTable table = AttenuationTable.forConfig(config);
+        List<ExposureWindow> windows = SyntheticWindows.generate(50, 12, 5, 5);
+        ScanAggregator.Result result = aggregator.aggregate(windows);
+
+        int[] weightedRow = new int[ScanAggregator.BUCKETS];
+        for (int w = 0; w < windows.size(); w++) {
+            ExposureWindow window = windows.get(w);
+            List<ScanInstance> scans = window.getScanInstances();
+            int[] minutes = new int[scans.size()];
+            int[] buckets = new int[scans.size()];
+            for (int s = 0; s < scans.size(); s++) {
+                minutes[s] = scans.get(s).getSecondsSinceLastScan() / 60;
+                buckets[s] = table.bucketOf(scans.get(s).getTypicalAttenuationDb());
+            }
+            boolean exceeds = aggregator.score(minutes, buckets, window.getInfectiousness(), window.getReportType(), weightedRow);
+
+            assertThat(weightedRow).isEqualTo(result.toScanData(w).getWeightedBuckets());
+            assertThat(exceeds).isEqualTo(result.exceedsThresholds[w]);
+        }
+    }
+
+    @Test
+    public void sumDurations_matchesBaseline() {
+        ExposureConfig config = TestConfigs.config();
+        List<ExposureWindow> windows = SyntheticWindows.generate(200, 10, 14, 11);
+        ScanAggregator.Result result = new ScanAggregator(config).aggregate(windows);
+        List<WindowData> windowData = new ArrayList<>();
+        for (int w = 0; w < result.count; w++) {
+            ExposureWindow window = windows.get(w);
+            windowData.add(new WindowData(window.getDateMillisSinceEpoch(), window.getCalibrationConfidence(), window.getReportType(), window.getInfectiousness(), result.toScanData(w)));
+        }
+
+        ScanData expected = BaselineRiskCalculation.sumDurations(windowData);
+        ScanData actual = RiskCalculationV2.sumDurations(windowData);
+
+        assertThat(actual.getBuckets()).isEqualTo(expected.getBuckets());
+        assertThat(actual.getWeightedBuckets()).isEqualTo(expected.getWeightedBuckets());
+        assertThat(actual.getNumScans()).isEqualTo(expected.getNumScans());
+        assertThat(RiskCalculationV2.sumDurations(Collections.emptyList()).getBuckets()).isEqualTo(new int[]{0, 0, 0, 0});
+    }
+
+    private static ScanAggregator.Result assertMatchesBaseline(ExposureConfig config, List<ExposureWindow> windows) {
+        ScanAggregator.Result result = new ScanAggregator(config).aggregate(windows);
+        assertThat(result.count).isEqualTo(windows.size());
+        for (int w = 0; w < windows.size(); w++) {
+            assertRowMatches(result, w, BaselineRiskCalculation.buildScanData(config, windows.get(w).getScanInstances()));
+        }
+        return result;
+    }
+
+    private static void assertRowMatches(ScanAggregator.Result result, int window, ScanData expected) {
+        ScanData actual = result.toScanData(window);
+        assertWithMessage("buckets of window %s", window).that(actual.getBuckets()).isEqualTo(expected.getBuckets());
+        assertWithMessage("weighted buckets of window %s", window).that(actual.getWeightedBuckets()).isEqualTo(expected.getWeightedBuckets());
+        assertWithMessage("scans of window %s", window).that(actual.getNumScans()).isEqualTo(expected.getNumScans());
+        assertWithMessage("threshold of window %s", window).that(actual.getExceedsThresholds()).isEqualTo(expected.getExceedsThresholds());
+    }
+}
@@ -0,0 +1,73 @@
+package ie.gov.tracing.nearby.riskcalculation;
+
+import com.google.android.gms.nearby.exposurenotification.ExposureWindow;
+import com.google.android.gms.nearby.exposurenotification.Infectiousness;
+import com.google.android.gms.nearby.exposurenotification.ReportType;
+import com.google.android.gms.nearby.exposurenotification.ScanInstance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// windows built with the GMS builders for the golden tests and benchmarks
+final class SyntheticWindows {
+
+    private SyntheticWindows() {
+    }
+
+    static ScanInstance scan(int typicalAttenuation, int secondsSinceLastScan) {
+        return new ScanInstance.Builder()
+                .setTypicalAttenuationDb(typicalAttenuation)
+                .setMinAttenuationDb(typicalAttenuation)
+                .setSecondsSinceLastScan(secondsSinceLastScan)
+                .build();
+    }
+
+    static ExposureWindow window(long dateMillis, List<ScanInstance> scans) {
+        return window(dateMillis, ReportType.CONFIRMED_TEST, Infectiousness.STANDARD, scans);
+    }
+
+    static ExposureWindow window(long dateMillis, int reportType, int infectiousness, List<ScanInstance> scans) {
+        return new ExposureWindow.Builder()
+                .setDateMillisSinceEpoch(dateMillis)
+                .setReportType(reportType)
+                .setInfectiousness(infectiousness)
+                .setCalibrationConfidence(0)
+                .setScanInstances(scans)
+                .build();
+    }
+
+    static long today() {
+        return TimeUnit.DAYS.toMillis(DayIndex.dayOf(System.currentTimeMillis()));
+    }
+
+    // windows spread over the last daySpread days, scans are a mix of near and far readings
+    static List<ExposureWindow> generate(int windowCount, int scansPerWindow, int daySpread, long seed) {
+        Random random = new Random(seed);
+        long today = today();
+        int[] reportTypes = {ReportType.CONFIRMED_TEST, ReportType.CONFIRMED_CLINICAL_DIAGNOSIS, ReportType.SELF_REPORT, ReportType.RECURSIVE};
+        int[] infectiousness = {Infectiousness.STANDARD, Infectiousness.HIGH};
+
+        List<ExposureWindow> windows = new ArrayList<>(windowCount);
+        for (int w = 0; w < windowCount; w++) {
+            List<ScanInstance> scans = new ArrayList<>(scansPerWindow);
+            for (int s = 0; s < scansPerWindow; s++) {
+                int typical = 40 + random.nextInt(60);
+                scans.add(new ScanInstance.Builder()
+                        .setTypicalAttenuationDb(typical)
+                        .setMinAttenuationDb(typical - random.nextInt(10))
+                        .setSecondsSinceLastScan(60 + random.nextInt(240))
+                        .build());
+            }
+            windows.add(new ExposureWindow.Builder()
+                    .setDateMillisSinceEpoch(today - TimeUnit.DAYS.toMillis(random.nextInt(Math.max(1, daySpread))))
+                    .setReportType(reportTypes[random.nextInt(reportTypes.length)])
+                    .setInfectiousness(infectiousness[random.nextInt(infectiousness.length)])
+                    .setCalibrationConfidence(random.nextInt(4))
+                    .setScanInstances(scans)
+                    .build());
+        }
+        return windows;
+    }
+}
@@ -0,0 +1,46 @@
+package ie.gov.tracing.nearby.riskcalculation
+
+import ie.gov.tracing.common.ExposureConfig
+
+// an ExposureConfig with only the fields the risk calculation reads set
+object TestConfigs {
+    @JvmStatic
+    @JvmOverloads
+    fun config(thresholds: IntArray = intArrayOf(50, 70, 90),
+               weights: DoubleArray = doubleArrayOf(100.0, 100.0, 100.0, 100.0),
+               timeThreshold: Int = 15,
+               contiguousMode: Boolean = false): ExposureConfig {
+        return ExposureConfig(
+                minimumRiskScore = 1,
+                attenuationLevelValues = intArrayOf(),
+                attenuationWeight = 50,
+                daysSinceLastExposureLevelValues = intArrayOf(),
+                daysSinceLastExposureWeight = 50,
+                durationLevelValues = intArrayOf(),
+                durationWeight = 50,
+                transmissionRiskLevelValues = intArrayOf(),
+                transmissionRiskWeight = 50,
+                durationAtAttenuationThresholds = intArrayOf(),
+                thresholdWeightings = doubleArrayOf(1.0, 1.0, 0.0),
+                timeThreshold = timeThreshold,
+                immediateDurationWeight = weights[0],
+                nearDurationWeight = weights[1],
+                mediumDurationWeight = weights[2],
+                otherDurationWeight = weights[3],
+                attenuationDurationThresholds = thresholds,
+                contiguousMode = contiguousMode,
+                v2Mode = true)
+    }
+
+    @JvmStatic
+    fun windowWeights(config: ExposureConfig, standard: Double, high: Double, confirmedTest: Double,
+                      clinicalDiagnosis: Double, selfReported: Double, recursive: Double): ExposureConfig {
+        return config.copy(
+                infectiousnessStandardWeight = standard,
+                infectiousnessHighWeight = high,
+                reportTypeConfirmedTestWeight = confirmedTest,
+                reportTypeConfirmedClinicalDiagnosisWeight = clinicalDiagnosis,
+                reportTypeSelfReportedWeight = selfReported,
+                reportTypeRecursiveWeight = recursive)
+    }
+}
@@ -0,0 +1,65 @@
+package ie.gov.tracing.network;
+
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import ie.gov.tracing.Benchmarks;
+
+// export zips at the sizes the server publishes, a daily batch is a few thousand keys and a
+// full two week download with other regions reaches the hundred thousand
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ExportFileReaderBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int keys;
+
+    private File file;
+    private byte[] exportBin;
+
+    @Setup
+    public void setUp() throws IOException {
+        exportBin = ExportFiles.exportBin(keys);
+        file = ExportFiles.zip(exportBin, File.createTempFile("export", ".zip"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    // inflating the zip entry and parsing, as run on every downloaded export
+    @Benchmark
+    public ExportSummary readZip() throws IOException {
+        return ExportFileReader.read(file);
+    }
+
+    // parsing alone, without the inflate
+    @Benchmark
+    public ExportSummary readExportBin() throws IOException {
+        return ExportFileReader.read(new ByteArrayInputStream(exportBin));
+    }
+
+    @Test
+    public void run() throws RunnerException {
+        Benchmarks.run(ExportFileReaderBenchmark.class);
+    }
+}
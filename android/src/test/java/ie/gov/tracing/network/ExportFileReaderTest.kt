@@ -0,0 +1,128 @@
+package ie.gov.tracing.network
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Assert.assertThrows
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.EOFException
+import java.io.IOException
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+class ExportFileReaderTest {
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    @Test
+    fun headerFieldsAndCounts_read() {
+        val file = ExportFiles.zip(ExportFiles.exportBin(250, 12, 1603065600L, 1603152000L, "IE", 2, 3), folder.newFile("1.zip"))
+
+        val summary = ExportFileReader.read(file)
+
+        assertThat(summary).isEqualTo(ExportSummary(250, 12, 1603065600L, 1603152000L, "IE", 2, 3))
+        assertThat(summary.totalKeys).isEqualTo(262)
+    }
+
+    @Test
+    fun emptyExport_hasNoKeys() {
+        val summary = ExportFileReader.read(ExportFiles.zip(ExportFiles.exportBin(0), folder.newFile("empty.zip")))
+
+        assertThat(summary.keyCount).isEqualTo(0)
+        assertThat(summary.totalKeys).isEqualTo(0)
+        assertThat(summary.region).isEqualTo("IE")
+    }
+
+    @Test
+    fun headerOnly_hasNoKeys() {
+        val summary = ExportFileReader.read(ByteArrayInputStream(ExportFiles.HEADER.toByteArray(Charsets.US_ASCII)))
+
+        assertThat(summary).isEqualTo(ExportSummary(0, 0, 0, 0, "", 0, 0))
+    }
+
+    @Test
+    fun largeExport_everyKeyCounted() {
+        val summary = ExportFileReader.read(ExportFiles.zip(ExportFiles.exportBin(100_000, 500), folder.newFile("large.zip")))
+
+        assertThat(summary.keyCount).isEqualTo(100_000)
+        assertThat(summary.revisedKeyCount).isEqualTo(500)
+    }
+
+    @Test
+    fun unknownFields_skipped() {
+        val out = ByteArrayOutputStream()
+        out.write(ExportFiles.exportBin(3))
+        ExportFiles.varint(out, 20, 123456789L)
+        ExportFiles.fixed64(out, 21, -1L)
+        ExportFiles.bytes(out, 22, ByteArray(300))
+        out.write(byteArrayOf((15 shl 3 or 5).toByte(), 1, 2, 3, 4))
+        ExportFiles.bytes(out, 7, ByteArray(40))
+
+        val summary = ExportFileReader.read(ByteArrayInputStream(out.toByteArray()))
+
+        assertThat(summary.keyCount).isEqualTo(4)
+        assertThat(summary.startTimestamp).isEqualTo(1603065600L)
+    }
+
+    @Test
+    fun invalidHeader_rejected() {
+        val bytes = ExportFiles.exportBin(5)
+        bytes[0] = 'X'.toByte()
+
+        assertThrows(ExportParseException::class.java) { ExportFileReader.read(ByteArrayInputStream(bytes)) }
+    }
+
+    @Test
+    fun oversizedRegion_rejectedBeforeAllocating() {
+        val out = ByteArrayOutputStream()
+        out.write(ExportFiles.HEADER.toByteArray(Charsets.US_ASCII))
+        // a length of 2 GB with no bytes behind it
+        out.write(byteArrayOf((3 shl 3 or 2).toByte(), 0x80.toByte(), 0x80.toByte(), 0x80.toByte(), 0x80.toByte(), 0x08))
+
+        assertThrows(ExportParseException::class.java) { ExportFileReader.read(ByteArrayInputStream(out.toByteArray())) }
+    }
+
+    @Test
+    fun negativeLength_rejected() {
+        val out = ByteArrayOutputStream()
+        out.write(ExportFiles.HEADER.toByteArray(Charsets.US_ASCII))
+        out.write((7 shl 3 or 2))
+        // ten byte varint of -1
+        repeat(9) { out.write(0xff) }
+        out.write(0x01)
+
+        assertThrows(ExportParseException::class.java) { ExportFileReader.read(ByteArrayInputStream(out.toByteArray())) }
+    }
+
+    @Test
+    fun lengthPastEndOfEntry_rejected() {
+        val out = ByteArrayOutputStream()
+        out.write(ExportFiles.exportBin(2))
+        // an unknown length delimited field 22 claiming 1000 bytes with only 3 behind it
+        out.write(byteArrayOf(0xb2.toByte(), 0x01, 0xe8.toByte(), 0x07, 1, 2, 3))
+        val file = ExportFiles.zip(out.toByteArray(), folder.newFile("long.zip"))
+
+        assertThrows(ExportParseException::class.java) { ExportFileReader.read(file) }
+    }
+
+    @Test
+    fun truncatedKey_rejected() {
+        val bytes = ExportFiles.exportBin(5)
+
+        assertThrows(EOFException::class.java) { ExportFileReader.read(ByteArrayInputStream(bytes.copyOf(bytes.size - 3))) }
+    }
+
+    @Test
+    fun missingExportEntry_rejected() {
+        val file = folder.newFile("other.zip")
+        ZipOutputStream(file.outputStream()).use { zip ->
+            zip.putNextEntry(ZipEntry("export.sig"))
+            zip.write(ByteArray(72))
+            zip.closeEntry()
+        }
+
+        assertThrows(IOException::class.java) { ExportFileReader.read(file) }
+    }
+}
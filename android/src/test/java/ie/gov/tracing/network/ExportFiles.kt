@@ -0,0 +1,94 @@
+package ie.gov.tracing.network
+
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.util.Random
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+// synthetic TemporaryExposureKeyExport zips laid out like the ones the server publishes
+object ExportFiles {
+    const val HEADER = "EK Export v1    "
+
+    @JvmStatic
+    @JvmOverloads
+    fun exportBin(keys: Int, revisedKeys: Int = 0, start: Long = 1603065600L, end: Long = 1603152000L,
+                  region: String = "IE", batchNum: Int = 1, batchSize: Int = 1, seed: Long = 42): ByteArray {
+        val random = Random(seed)
+        val out = ByteArrayOutputStream(HEADER.length + (keys + revisedKeys) * 32)
+        out.write(HEADER.toByteArray(Charsets.US_ASCII))
+
+        fixed64(out, 1, start)
+        fixed64(out, 2, end)
+        bytes(out, 3, region.toByteArray(Charsets.UTF_8))
+        varint(out, 4, batchNum.toLong())
+        varint(out, 5, batchSize.toLong())
+        bytes(out, 6, signatureInfo())
+        repeat(keys) { bytes(out, 7, key(random)) }
+        repeat(revisedKeys) { bytes(out, 8, key(random)) }
+        return out.toByteArray()
+    }
+
+    @JvmStatic
+    fun zip(exportBin: ByteArray, file: File): File {
+        ZipOutputStream(FileOutputStream(file)).use { zip ->
+            zip.putNextEntry(ZipEntry("export.bin"))
+            zip.write(exportBin)
+            zip.closeEntry()
+            zip.putNextEntry(ZipEntry("export.sig"))
+            zip.write(ByteArray(72))
+            zip.closeEntry()
+        }
+        return file
+    }
+
+    // key_data, transmission_risk_level, rolling_start_interval_number, rolling_period, report_type
+    private fun key(random: Random): ByteArray {
+        val out = ByteArrayOutputStream(32)
+        bytes(out, 1, ByteArray(16).also { random.nextBytes(it) })
+        varint(out, 2, random.nextInt(8).toLong())
+        varint(out, 3, 2672000L + random.nextInt(14 * 144))
+        varint(out, 4, 144)
+        varint(out, 5, 1)
+        return out.toByteArray()
+    }
+
+    private fun signatureInfo(): ByteArray {
+        val out = ByteArrayOutputStream()
+        bytes(out, 3, "v1".toByteArray(Charsets.UTF_8))
+        bytes(out, 4, "372".toByteArray(Charsets.UTF_8))
+        bytes(out, 5, "1.2.840.10045.4.3.2".toByteArray(Charsets.UTF_8))
+        return out.toByteArray()
+    }
+
+    @JvmStatic
+    fun varint(out: ByteArrayOutputStream, field: Int, value: Long) {
+        writeVarint(out, (field shl 3).toLong())
+        writeVarint(out, value)
+    }
+
+    @JvmStatic
+    fun fixed64(out: ByteArrayOutputStream, field: Int, value: Long) {
+        writeVarint(out, (field shl 3 or 1).toLong())
+        for (i in 0 until 8) {
+            out.write((value ushr (8 * i)).toInt() and 0xff)
+        }
+    }
+
+    @JvmStatic
+    fun bytes(out: ByteArrayOutputStream, field: Int, value: ByteArray) {
+        writeVarint(out, (field shl 3 or 2).toLong())
+        writeVarint(out, value.size.toLong())
+        out.write(value)
+    }
+
+    private fun writeVarint(out: ByteArrayOutputStream, value: Long) {
+        var remaining = value
+        while (remaining and 0x7fL.inv() != 0L) {
+            out.write(((remaining and 0x7f) or 0x80).toInt())
+            remaining = remaining ushr 7
+        }
+        out.write(remaining.toInt())
+    }
+}
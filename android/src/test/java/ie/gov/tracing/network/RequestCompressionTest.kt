@@ -0,0 +1,176 @@
+package ie.gov.tracing.network
+
+import android.content.Context
+import androidx.test.core.app.ApplicationProvider
+import com.google.common.truth.Truth.assertThat
+import com.google.gson.Gson
+import ie.gov.tracing.ShadowArguments
+import ie.gov.tracing.nearby.riskcalculation.ScanData
+import ie.gov.tracing.nearby.riskcalculation.TestConfigs
+import ie.gov.tracing.nearby.riskcalculation.WindowData
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.util.Random
+import java.util.concurrent.TimeUnit
+import java.util.zip.GZIPInputStream
+
+// posts go through Fetcher.post to a local stand in for the server, which decodes them the
+// way the real one has to
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [28], shadows = [ShadowArguments::class], instrumentedPackages = ["com.facebook.react.bridge"])
+class RequestCompressionTest {
+    private lateinit var server: MockWebServer
+    private lateinit var context: Context
+    private val gson = Gson()
+
+    @Before
+    fun setUp() {
+        context = ApplicationProvider.getApplicationContext()
+        RequestCompression.reset()
+        server = MockWebServer()
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+        RequestCompression.reset()
+    }
+
+    @Test
+    fun beforeGzipAdvertised_sentAsIs() {
+        val body = callbackBody()
+
+        val request = post(body)
+
+        assertThat(request.getHeader("Content-Encoding")).isNull()
+        assertThat(request.body.readUtf8()).isEqualTo(body)
+    }
+
+    @Test
+    fun afterGzipAdvertised_compressedAndDecoded() {
+        val body = callbackBody()
+        post(body, "gzip, deflate")
+
+        val request = post(body)
+
+        assertThat(request.getHeader("Content-Encoding")).isEqualTo("gzip")
+        assertThat(request.bodySize).isLessThan(body.toByteArray(Charsets.UTF_8).size.toLong())
+        assertThat(decode(request)).isEqualTo(body)
+    }
+
+    @Test
+    fun gzipRefused_backToPlain() {
+        val body = callbackBody()
+        post(body, "gzip")
+        post(body, "gzip;q=0, identity")
+
+        val request = post(body)
+
+        assertThat(request.getHeader("Content-Encoding")).isNull()
+        assertThat(request.body.readUtf8()).isEqualTo(body)
+    }
+
+    @Test
+    fun chaff_neverCompressed() {
+        val body = callbackBody()
+        post(body, "gzip")
+
+        val request = post(body, chaff = true)
+
+        assertThat(request.getHeader("Content-Encoding")).isNull()
+        assertThat(request.getHeader("X-Chaff")).isEqualTo("chaff")
+        assertThat(request.body.readUtf8()).isEqualTo(body)
+    }
+
+    @Test
+    fun smallMetric_sentAsIs() {
+        post(callbackBody(), "gzip")
+        val body = gson.toJson(Metric("android", "CALLBACK_REQUEST", "1.2.3", null))
+
+        val request = post(body)
+
+        assertThat(request.getHeader("Content-Encoding")).isNull()
+        assertThat(request.body.readUtf8()).isEqualTo(body)
+    }
+
+    // bytes saved on the wire for the bodies the app actually sends
+    @Test
+    fun typicalBodies_savings() {
+        post(callbackBody(), "gzip")
+
+        assertThat(postAndMeasure(callbackBody())).isGreaterThan(0.5)
+        assertThat(postAndMeasure(gson.toJson(Metric("android", "CONTACT_NOTIFICATION", "1.2.3",
+                mapOf("windows" to windows(10), "maxRiskScore" to 3, "simulated" to false))))).isGreaterThan(0.3)
+        assertThat(postAndMeasure(gson.toJson(mapOf("exposureConfig" to gson.toJson(TestConfigs.config()),
+                "language" to (1..40).associate { "string$it" to "Translated text number $it for the app" }))))).isGreaterThan(0.3)
+        assertThat(RequestCompression.summary()).startsWith("requests: 3,")
+    }
+
+    @Test
+    fun acceptEncodingHeader_parsed() {
+        assertThat(RequestCompression.supportsGzip("gzip")).isTrue()
+        assertThat(RequestCompression.supportsGzip("GZIP")).isTrue()
+        assertThat(RequestCompression.supportsGzip("br, gzip;q=0.8")).isTrue()
+        assertThat(RequestCompression.supportsGzip("gzip ; q=1.0")).isTrue()
+        assertThat(RequestCompression.supportsGzip("*")).isTrue()
+        assertThat(RequestCompression.supportsGzip("gzip;q=0")).isFalse()
+        assertThat(RequestCompression.supportsGzip("gzip;q=0.000, *")).isFalse()
+        assertThat(RequestCompression.supportsGzip("*;q=0")).isFalse()
+        assertThat(RequestCompression.supportsGzip("gzipfoo")).isFalse()
+        assertThat(RequestCompression.supportsGzip("gzip;q=abc")).isFalse()
+        assertThat(RequestCompression.supportsGzip("identity")).isFalse()
+        assertThat(RequestCompression.supportsGzip("br, deflate")).isFalse()
+        assertThat(RequestCompression.supportsGzip("")).isFalse()
+    }
+
+    private fun post(body: String, acceptEncoding: String? = null, chaff: Boolean = false): RecordedRequest {
+        val response = MockResponse().setResponseCode(204)
+        if (acceptEncoding != null) {
+            response.addHeader("Accept-Encoding", acceptEncoding)
+        }
+        server.enqueue(response)
+
+        val sent = Fetcher.post("/callback", body, context, chaff, server.url("/").toString().trimEnd('/'),
+                false, false, RequestClass.CALLBACK, null)
+
+        assertThat(sent).isTrue()
+        return server.takeRequest(5, TimeUnit.SECONDS)!!
+    }
+
+    // fraction of the raw body saved on the wire
+    private fun postAndMeasure(body: String): Double {
+        val request = post(body)
+        assertThat(request.getHeader("Content-Encoding")).isEqualTo("gzip")
+        assertThat(decode(request)).isEqualTo(body)
+        return 1.0 - request.bodySize.toDouble() / body.toByteArray(Charsets.UTF_8).size
+    }
+
+    private fun decode(request: RecordedRequest): String {
+        return String(GZIPInputStream(request.body.inputStream()).use { it.readBytes() }, Charsets.UTF_8)
+    }
+
+    private fun callbackBody(): String {
+        return gson.toJson(Callback("+353871234567", DAY, 3, mapOf("windows" to windows(30))))
+    }
+
+    private fun windows(count: Int): List<WindowData> {
+        val random = Random(42)
+        return (0 until count).map {
+            val buckets = IntArray(4) { random.nextInt(30) }
+            WindowData(DAY - TimeUnit.DAYS.toMillis(random.nextInt(14).toLong()), random.nextInt(4), 1 + random.nextInt(4), 1 + random.nextInt(2),
+                    ScanData(buckets, buckets.copyOf(), random.nextBoolean(), random.nextInt(20)))
+        }
+    }
+
+    companion object {
+        private const val DAY = 1603065600000L
+    }
+}
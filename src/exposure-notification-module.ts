@@ -117,6 +117,16 @@ export interface ExposureNotificationModule extends EventSubscriptionVendor {
 
   getConfigData(): Promise<any>;
 
+  /**
+   * @platform android
+   */
+  getApiStats(): Promise<any>;
+
+  /**
+   * @platform android
+   */
+  replayExposureWindows(configs: string[]): Promise<any>;
+
   version(): Promise<Version>;
 
   bundleId(): Promise<string>;